@@ -0,0 +1,42 @@
+package com.geometric.tree;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import com.geometric.util.Geometric.*;
+
+// The window scan with the Vector API. A full vector of x and y coordinates
+// is compared against the window at once, and the indices are extracted from
+// the bits of the resulting mask. The tail of the slice is scanned scalar.
+//
+// NOTE:
+// This class needs --add-modules jdk.incubator.vector to compile and run, so
+// it lives in the separate src-vector source root, see the README.
+// WindowScan only loads it when the module is present.
+class VectorWindowScan extends WindowScan {
+    static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    int scan(int[] xs, int[] ys, int from, int to, Window window,
+             int[] matches) {
+        int count = 0;
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector x = IntVector.fromArray(SPECIES, xs, i);
+            IntVector y = IntVector.fromArray(SPECIES, ys, i);
+            VectorMask<Integer> mask =
+                    x.compare(VectorOperators.GE, window.getStartX())
+                    .and(x.compare(VectorOperators.LE, window.getEndX()))
+                    .and(y.compare(VectorOperators.GE, window.getStartY()))
+                    .and(y.compare(VectorOperators.LE, window.getEndY()));
+            long bits = mask.toLong();
+            while (bits != 0) {
+                matches[count++] = i + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return scanScalar(xs, ys, i, to, window, matches, count);
+    }
+}
@@ -0,0 +1,61 @@
+package com.geometric.tree;
+
+// The count, sum, minimum and maximum of the weights of a set of points.
+// The range trees store one for every subtree of weighted points, so that
+// a window can be aggregated by combining O(log^2n) of them.
+public class Aggregate {
+    long count;
+    long sum;
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    // The minimum and maximum are only meaningful when the count is not 0.
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    void add(long weight) {
+        count++;
+        sum += weight;
+        min = Math.min(min, weight);
+        max = Math.max(max, weight);
+    }
+
+    void add(Aggregate aggregate) {
+        if (aggregate == null) {
+            return;
+        }
+        count += aggregate.count;
+        sum += aggregate.sum;
+        min = Math.min(min, aggregate.min);
+        max = Math.max(max, aggregate.max);
+    }
+
+    // Combine the aggregates of two subtrees, either of which may be null.
+    static Aggregate combine(Aggregate left, Aggregate right) {
+        if (left == null && right == null) {
+            return null;
+        }
+        Aggregate aggregate = new Aggregate();
+        aggregate.add(left);
+        aggregate.add(right);
+        return aggregate;
+    }
+
+    public String toString() {
+        return "count:" + count + ", sum:" + sum + ", min:" + min + ", max:" +
+                max;
+    }
+}
@@ -0,0 +1,264 @@
+package com.geometric.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.geometric.util.Geometric.*;
+import com.geometric.util.Utils;
+
+public class DynamicIntervalTree {
+    // The interval tree is static, as the segments containing the median of
+    // every node are baked into range trees. This is the augmented interval
+    // tree, which supports inserting and deleting segments.
+    //
+    // It is an AVL tree of the horizontal segments, keyed by the start and
+    // then the end point. Every node stores the segments with its key, and
+    // the following for its subtree:
+    // a. The greatest end X coordinate.
+    // b. The least and greatest Y coordinate.
+    // The Y coordinate of a segment is the one of its start point.
+    //
+    // Insert and Delete
+    // =================
+    // A segment is inserted or deleted as in a binary search tree, and the
+    // rotations that rebalance the tree recompute the subtree values of the
+    // nodes they move. Both take O(logn) time.
+    //
+    // Query
+    // =====
+    // The segments crossing a vertical line are found by walking the tree in
+    // order, skipping the subtrees whose greatest end is before the line, or
+    // whose Y coordinates are outside the line. The right subtree of a node
+    // that starts after the line is skipped, as all of its segments do.
+    //
+    // The greatest end bounds the walk to O(logn) nodes per reported
+    // segment. The Y coordinates of a subtree are only its bounding range,
+    // e.g. its segments within the Y range of the line may all end before
+    // it while the ones crossing it are outside the Y range, so the walk
+    // can visit every node without reporting a segment. A guaranteed bound
+    // with the Y range would need a structure keyed on Y at every node, such
+    // as a priority search tree.
+    static class IntervalNode {
+        // The segments with the key of the node.
+        List<Segment> segments = new ArrayList<>();
+        int height = 1;
+        int maxEndX;
+        int minY;
+        int maxY;
+        IntervalNode left;
+        IntervalNode right;
+        IntervalNode(Segment segment) {
+            segments.add(segment);
+        }
+
+        Segment getKey() {
+            return segments.getFirst();
+        }
+    }
+
+    // Compares the segments by the start point and then by the end point.
+    int compare(Segment segment1, Segment segment2) {
+        int result = Utils.getPointXComparator().compare(segment1.getStart(),
+                segment2.getStart());
+        if (result != 0) {
+            return result;
+        }
+        return Utils.getPointXComparator().compare(segment1.getEnd(),
+                segment2.getEnd());
+    }
+
+    int height(IntervalNode node) {
+        return node == null ? 0 : node.height;
+    }
+
+    // Recompute the subtree values of the node from its children.
+    void update(IntervalNode node) {
+        Segment key = node.getKey();
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.maxEndX = key.getEnd().getX();
+        node.minY = key.getStart().getY();
+        node.maxY = key.getStart().getY();
+        for (IntervalNode child: new IntervalNode[]{node.left, node.right}) {
+            if (child != null) {
+                node.maxEndX = Math.max(node.maxEndX, child.maxEndX);
+                node.minY = Math.min(node.minY, child.minY);
+                node.maxY = Math.max(node.maxY, child.maxY);
+            }
+        }
+    }
+
+    IntervalNode rotateRight(IntervalNode node) {
+        IntervalNode left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    IntervalNode rotateLeft(IntervalNode node) {
+        IntervalNode right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    // Update the node, and rotate it if the heights of its subtrees differ
+    // by more than one. Returns the root of the subtree.
+    IntervalNode rebalance(IntervalNode node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        } else if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    // Insert the segment into the subtree, and return the root of the
+    // subtree.
+    // Time Complexity = O(logn)
+    IntervalNode insert(IntervalNode node, Segment segment) {
+        if (node == null) {
+            IntervalNode leaf = new IntervalNode(segment);
+            update(leaf);
+            return leaf;
+        }
+        int result = compare(segment, node.getKey());
+        if (result < 0) {
+            node.left = insert(node.left, segment);
+        } else if (result > 0) {
+            node.right = insert(node.right, segment);
+        } else {
+            node.segments.add(segment);
+            return node;
+        }
+        return rebalance(node);
+    }
+
+    // Delete the segment from the subtree, and return the root of the
+    // subtree. Segments are identified by the object inserted.
+    // Time Complexity = O(logn)
+    IntervalNode delete(IntervalNode node, Segment segment) {
+        if (node == null) {
+            return null;
+        }
+        int result = compare(segment, node.getKey());
+        if (result < 0) {
+            node.left = delete(node.left, segment);
+        } else if (result > 0) {
+            node.right = delete(node.right, segment);
+        } else {
+            if (!node.segments.remove(segment) || !node.segments.isEmpty()) {
+                return node;
+            } else if (node.left == null) {
+                return node.right;
+            } else if (node.right == null) {
+                return node.left;
+            }
+            // Move the segments of the successor here, and remove it from
+            // the right subtree.
+            IntervalNode successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            node.segments = successor.segments;
+            node.right = deleteMin(node.right);
+        }
+        return rebalance(node);
+    }
+
+    IntervalNode deleteMin(IntervalNode node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return rebalance(node);
+    }
+
+    void findSegmentsCrossingLine(IntervalNode node, QueryLine queryLine,
+                                  List<Segment> segments) {
+        findSegmentsCrossingLine(node, queryLine, segments::add);
+    }
+
+    // Stream the segments crossing the given vertical line to the sink, in
+    // the order of their start points.
+    // Returns false if the sink stopped the query.
+    // Time Complexity = O(min(n, klogn)) without the Y range, O(n) with it
+    boolean findSegmentsCrossingLine(IntervalNode node, QueryLine queryLine,
+                                     SegmentSink sink) {
+        int queryX = queryLine.getX();
+        if (node == null || node.maxEndX < queryX ||
+                node.minY > queryLine.getEndY() ||
+                node.maxY < queryLine.getStartY()) {
+            return true;
+        }
+        if (!findSegmentsCrossingLine(node.left, queryLine, sink)) {
+            return false;
+        }
+        Segment key = node.getKey();
+        if (key.getStart().getX() > queryX) {
+            return true;
+        }
+        if (key.getEnd().getX() >= queryX &&
+                key.getStart().getY() >= queryLine.getStartY() &&
+                key.getStart().getY() <= queryLine.getEndY()) {
+            for (Segment segment: node.segments) {
+                if (!sink.accept(segment)) {
+                    return false;
+                }
+            }
+        }
+        return findSegmentsCrossingLine(node.right, queryLine, sink);
+    }
+
+    public static void main(String[] args) {
+        DynamicIntervalTree dynamicIntervalTree = new DynamicIntervalTree();
+        IntervalNode root = null;
+        List<Segment> insertedSegments = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int startX = Utils.getRandomPositiveInteger(40);
+            int startY = Utils.getRandomPositiveInteger(40);
+            int endX = startX + Utils.getRandomPositiveInteger(20);
+            Segment segment = new Segment(startX, startY, endX, startY);
+            root = dynamicIntervalTree.insert(root, segment);
+            insertedSegments.add(segment);
+        }
+        System.out.println("Input segments:");
+        for (Segment segment: insertedSegments) {
+            System.out.println(segment);
+        }
+
+        QueryLine queryLine = new QueryLine(15, 15, 40);
+        System.out.println("Query Line:");
+        System.out.println(queryLine);
+        List<Segment> outputSegments = new ArrayList<>();
+        dynamicIntervalTree.findSegmentsCrossingLine(root, queryLine,
+                outputSegments);
+        System.out.println("Segments that intersect the query line:");
+        for (Segment segment: outputSegments) {
+            System.out.println(segment);
+        }
+
+        // Delete the segments found, no segment crosses the line afterwards.
+        for (Segment segment: outputSegments) {
+            root = dynamicIntervalTree.delete(root, segment);
+        }
+        List<Segment> outputSegmentsAfterDelete = new ArrayList<>();
+        dynamicIntervalTree.findSegmentsCrossingLine(root, queryLine,
+                outputSegmentsAfterDelete);
+        System.out.println("Segments that intersect the query line after " +
+                "delete:");
+        for (Segment segment: outputSegmentsAfterDelete) {
+            System.out.println(segment);
+        }
+    }
+}
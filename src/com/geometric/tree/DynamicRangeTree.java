@@ -0,0 +1,176 @@
+package com.geometric.tree;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import com.geometric.util.Geometric.*;
+import com.geometric.util.Utils;
+
+public class DynamicRangeTree {
+    // The two-dimensional range tree is static, so this class makes it
+    // dynamic with the logarithmic method.
+    //
+    // Insert
+    // ======
+    // The points are kept in a series of levels, where level i is either empty
+    // or a static range tree of exactly 2^i points. An inserted point is
+    // carried up from level 0, merging with the points of every full level it
+    // passes, until it reaches an empty level where the carried points are
+    // built into a new tree. This works like incrementing a binary counter,
+    // so every point takes part in O(logn) builds, for O(log^2n) amortized
+    // time per insert.
+    //
+    // Delete
+    // ======
+    // A deleted point is only marked with a tombstone, and queries skip it.
+    // Once the tombstones outnumber the live points, the levels are compacted
+    // by rebuilding them from the live points.
+    //
+    // Query
+    // =====
+    // A window query is run on every non empty level, i.e. O(logn) static
+    // range trees.
+    //
+    // The levels are rank space range trees so that the points need not have
+    // unique coordinates. Points are identified by the object inserted, and
+    // an object already in the tree is not inserted again, as it would then
+    // be in two levels, counted twice, and hidden from both by one delete.
+    static class Level {
+        List<Point> points;
+        RankSpaceRangeTree rangeTree;
+        Level(List<Point> points) {
+            this.points = points;
+            this.rangeTree = new RankSpaceRangeTree(points);
+        }
+    }
+
+    List<Level> levels = new ArrayList<>();
+    // The points stored in the levels, including the deleted ones.
+    Set<Point> storedPoints = new HashSet<>();
+    Set<Point> deletedPoints = new HashSet<>();
+    int size;
+
+    int size() {
+        return size;
+    }
+
+    // Returns false if the point is already in the tree.
+    boolean insert(Point point) {
+        // A deleted point is still stored in its level.
+        if (deletedPoints.remove(point)) {
+            size++;
+            return true;
+        } else if (!storedPoints.add(point)) {
+            return false;
+        }
+        List<Point> carriedPoints = new ArrayList<>();
+        carriedPoints.add(point);
+        int i;
+        for (i = 0; i < levels.size() && levels.get(i) != null; i++) {
+            carriedPoints.addAll(levels.get(i).points);
+            levels.set(i, null);
+        }
+        if (i == levels.size()) {
+            levels.add(null);
+        }
+        levels.set(i, new Level(carriedPoints));
+        size++;
+        return true;
+    }
+
+    // Returns false if the point is not in the tree.
+    boolean delete(Point point) {
+        if (!contains(point)) {
+            return false;
+        }
+        deletedPoints.add(point);
+        size--;
+        if (deletedPoints.size() > size) {
+            compact();
+        }
+        return true;
+    }
+
+    boolean contains(Point point) {
+        return storedPoints.contains(point) && !deletedPoints.contains(point);
+    }
+
+    // Rebuild the levels from the live points, with the levels for the set
+    // bits of the number of live points.
+    void compact() {
+        List<Point> livePoints = new ArrayList<>();
+        for (Level level: levels) {
+            if (level == null) {
+                continue;
+            }
+            for (Point point: level.points) {
+                if (!deletedPoints.contains(point)) {
+                    livePoints.add(point);
+                }
+            }
+        }
+        levels.clear();
+        storedPoints.removeAll(deletedPoints);
+        deletedPoints.clear();
+        int start = 0;
+        for (int i = 0; (1 << i) <= livePoints.size(); i++) {
+            if ((livePoints.size() & (1 << i)) != 0) {
+                levels.add(new Level(new ArrayList<>(
+                        livePoints.subList(start, start + (1 << i)))));
+                start += 1 << i;
+            } else {
+                levels.add(null);
+            }
+        }
+    }
+
+    // Run the query on every level, including the deleted points.
+    private boolean findPointsInLevels(Window window, PointSink sink) {
+        for (Level level: levels) {
+            if (level != null && !level.rangeTree.findPoints(window, sink)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void findPoints(Window window, List<Point> points) {
+        findPoints(window, points::add);
+    }
+
+    // Stream the points in the given window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findPoints(Window window, PointSink sink) {
+        return findPointsInLevels(window,
+                point -> deletedPoints.contains(point) || sink.accept(point));
+    }
+
+    public static void main(String[] args) {
+        DynamicRangeTree dynamicRangeTree = new DynamicRangeTree();
+        List<Point> insertedPoints = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Point point = new Point(Utils.getRandomPositiveInteger(20),
+                    Utils.getRandomPositiveInteger(20));
+            dynamicRangeTree.insert(point);
+            insertedPoints.add(point);
+        }
+        System.out.println("Input points::");
+        Utils.print(insertedPoints);
+
+        Window window = new Window(5, 5, 15, 15);
+        List<Point> pointsReturned = new ArrayList<>();
+        dynamicRangeTree.findPoints(window, pointsReturned);
+        System.out.println("Points returned");
+        Utils.print(pointsReturned);
+
+        // Delete the points returned, the window is empty afterwards.
+        for (Point point: pointsReturned) {
+            dynamicRangeTree.delete(point);
+        }
+        List<Point> pointsReturnedAfterDelete = new ArrayList<>();
+        dynamicRangeTree.findPoints(window, pointsReturnedAfterDelete);
+        System.out.println("Points returned after delete");
+        Utils.print(pointsReturnedAfterDelete);
+    }
+}
@@ -0,0 +1,249 @@
+package com.geometric.tree;
+
+import java.util.*;
+
+import com.geometric.util.Geometric.*;
+import com.geometric.util.PointBatch;
+import com.geometric.util.Utils;
+
+public class FlatKDTree {
+    // A compact, array backed variant of the 2-dimensional KD Tree.
+    //
+    // Build
+    // =====
+    // As in the KD tree the space is split by X and then by Y alternately,
+    // but the median is chosen by position with a quickselect, so the points
+    // are split evenly and reordered in place.
+    // a. The nodes are stored in flat arrays indexed by node number.
+    // b. A subtree with at most bucketSize points becomes a leaf, holding
+    // a bucket of points instead of a single point.
+    // c. The points are stored in the order of the leaves, so the points of
+    // every subtree are a contiguous slice of the point arrays.
+    //
+    // Query
+    // =====
+    // The traversal keeps the region of each node as primitive bounds on an
+    // explicit stack instead of splitting Window objects, so a window query
+    // creates no objects per visited node.
+    // a. A subtree whose region is within the window is reported as a slice.
+    // b. A leaf, or a subtree with at most scanThreshold points, whose region
+    // intersects the window has its slice scanned with the WindowScan.
+    static final int DEFAULT_BUCKET_SIZE = 32;
+    static final int DEFAULT_SCAN_THRESHOLD = 256;
+    static final int NONE = -1;
+
+    int bucketSize;
+    int scanThreshold;
+    // The points in leaf order, with their coordinates as columns.
+    Point[] points;
+    int[] xs;
+    int[] ys;
+    // The bounding box of all the points is the region of the root.
+    int minX;
+    int minY;
+    int maxX;
+    int maxY;
+    // Node arrays. The root is node 0, and leaves have no children.
+    int nodeCount;
+    int[] splitValues;
+    int[] lefts;
+    int[] rights;
+    int[] starts;
+    int[] ends;
+    int depth;
+
+    FlatKDTree(PointBatch batch) {
+        this(batch, DEFAULT_BUCKET_SIZE);
+    }
+
+    FlatKDTree(PointBatch batch, int bucketSize) {
+        this(batch, bucketSize, DEFAULT_SCAN_THRESHOLD);
+    }
+
+    FlatKDTree(PointBatch batch, int bucketSize, int scanThreshold) {
+        this.bucketSize = Math.max(1, bucketSize);
+        this.scanThreshold = scanThreshold;
+        int size = batch.size();
+        Point[] batchPoints = batch.toPoints();
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        int capacity = 2 * (size / this.bucketSize + 1) + 1;
+        splitValues = new int[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        if (size > 0) {
+            build(batch, indices, 0, size, /*splitByXCoordinate=*/true, 1);
+        }
+
+        points = new Point[size];
+        xs = new int[size];
+        ys = new int[size];
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            points[i] = batchPoints[indices[i]];
+            xs[i] = batch.getX(indices[i]);
+            ys[i] = batch.getY(indices[i]);
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+    }
+
+    int addNode(int start, int end) {
+        if (nodeCount == starts.length) {
+            int capacity = 2 * nodeCount;
+            splitValues = Arrays.copyOf(splitValues, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        int node = nodeCount++;
+        starts[node] = start;
+        ends[node] = end;
+        lefts[node] = NONE;
+        rights[node] = NONE;
+        return node;
+    }
+
+    // Build the subtree for the slice of indices and return its node.
+    // Time Complexity = O(nlogn)
+    int build(PointBatch batch, int[] indices, int from, int to,
+              boolean splitByXCoordinate, int level) {
+        int node = addNode(from, to);
+        depth = Math.max(depth, level);
+        if (to - from <= bucketSize) {
+            return node;
+        }
+        int mid = (from + to) >>> 1;
+        batch.select(indices, from, to, mid, splitByXCoordinate);
+        // The points before the median have a coordinate less than or equal
+        // to the split value, and the points after it greater than or equal.
+        splitValues[node] = batch.getCoordinate(indices[mid],
+                splitByXCoordinate);
+        int left = build(batch, indices, from, mid, !splitByXCoordinate,
+                level + 1);
+        int right = build(batch, indices, mid, to, !splitByXCoordinate,
+                level + 1);
+        lefts[node] = left;
+        rights[node] = right;
+        return node;
+    }
+
+    boolean isLeaf(int node) {
+        return lefts[node] == NONE;
+    }
+
+    // Report the slice of points without checking them against the window.
+    boolean addPoints(int start, int end, PointSink sink) {
+        for (int i = start; i < end; i++) {
+            if (!sink.accept(points[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void findPoints(Window window, List<Point> points) {
+        findPoints(window, points::add);
+    }
+
+    // Stream the points that lie within the window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findPoints(Window window, PointSink sink) {
+        if (nodeCount == 0) {
+            return true;
+        }
+        int windowStartX = window.getStartX();
+        int windowStartY = window.getStartY();
+        int windowEndX = window.getEndX();
+        int windowEndY = window.getEndY();
+        // The stack holds the node, its split direction and its region.
+        int[] nodes = new int[depth + 1];
+        boolean[] splitByX = new boolean[depth + 1];
+        int[] regionStartX = new int[depth + 1];
+        int[] regionStartY = new int[depth + 1];
+        int[] regionEndX = new int[depth + 1];
+        int[] regionEndY = new int[depth + 1];
+        WindowScan windowScan = WindowScan.getInstance();
+        int[] matches = new int[Math.min(points.length,
+                Math.max(bucketSize, scanThreshold))];
+        int top = 0;
+        nodes[0] = 0;
+        splitByX[0] = true;
+        regionStartX[0] = minX;
+        regionStartY[0] = minY;
+        regionEndX[0] = maxX;
+        regionEndY[0] = maxY;
+        while (top >= 0) {
+            int node = nodes[top];
+            boolean byX = splitByX[top];
+            int startX = regionStartX[top];
+            int startY = regionStartY[top];
+            int endX = regionEndX[top];
+            int endY = regionEndY[top];
+            top--;
+            if (startX > windowEndX || endX < windowStartX ||
+                    startY > windowEndY || endY < windowStartY) {
+                continue;
+            }
+            if (startX >= windowStartX && endX <= windowEndX &&
+                    startY >= windowStartY && endY <= windowEndY) {
+                if (!addPoints(starts[node], ends[node], sink)) {
+                    return false;
+                }
+                continue;
+            }
+            if (isLeaf(node) || ends[node] - starts[node] <= scanThreshold) {
+                int count = windowScan.scan(xs, ys, starts[node], ends[node],
+                        window, matches);
+                for (int i = 0; i < count; i++) {
+                    if (!sink.accept(points[matches[i]])) {
+                        return false;
+                    }
+                }
+                continue;
+            }
+            // Push the right child first, so the left child is visited first
+            // and the points are reported in leaf order.
+            int split = splitValues[node];
+            top++;
+            nodes[top] = rights[node];
+            splitByX[top] = !byX;
+            regionStartX[top] = byX ? split : startX;
+            regionStartY[top] = byX ? startY : split;
+            regionEndX[top] = endX;
+            regionEndY[top] = endY;
+            top++;
+            nodes[top] = lefts[node];
+            splitByX[top] = !byX;
+            regionStartX[top] = startX;
+            regionStartY[top] = startY;
+            regionEndX[top] = byX ? split : endX;
+            regionEndY[top] = byX ? endY : split;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+        List<Point> inputPoints = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            inputPoints.add(new Point(Utils.getRandomPositiveInteger(40),
+                    Utils.getRandomPositiveInteger(40)));
+        }
+        FlatKDTree flatKDTree = new FlatKDTree(PointBatch.of(inputPoints),
+                /*bucketSize=*/8);
+        Window window = new Window(1, 1, 14, 24);
+        System.out.println("Window " + window);
+        System.out.println("Points returned");
+        List<Point> pointsReturned = new ArrayList<>();
+        flatKDTree.findPoints(window, pointsReturned);
+        Utils.print(pointsReturned);
+    }
+}
@@ -0,0 +1,199 @@
+package com.geometric.tree;
+
+import java.util.*;
+import com.geometric.util.Geometric.*;
+import com.geometric.util.Utils;
+
+public class FlatSingleDimensionalRangeTree {
+    // A static, array backed variant of the single dimensional range tree.
+    //
+    // Layout
+    // ======
+    // a. The leaves are kept as the sorted array of points along with a
+    // parallel array of their coordinates, so every subtree of the pointer
+    // based tree corresponds to a contiguous slice of these arrays.
+    // b. The search keys are laid out in Eytzinger (BFS) order, i.e. the
+    // children of the key at index k are at 2k and 2k+1. The top levels of
+    // the implicit tree share cache lines, and the descent needs no pointers.
+    //
+    // Query
+    // =====
+    // The split node search of the pointer based tree reduces to finding the
+    // first leaf at or after the window start and the first leaf after the
+    // window end. The points between them are reported as a slice copy
+    // instead of walking the subtrees below the split node, and counted as
+    // the length of the slice.
+    //
+    // Aggregates
+    // ==========
+    // The weights of the weighted points are kept in a bottom up segment
+    // tree over the leaves, so the aggregate of a slice combines O(logn)
+    // entries, as the node aggregates of the pointer based tree do.
+    //
+    // Like the pointer based tree the points have to be provided sorted by the
+    // relevant coordinate.
+    Point[] points;
+    // Sorted coordinates of the leaves, parallel to points.
+    int[] coordinates;
+    // Eytzinger ordered keys, index 0 is unused.
+    int[] keys;
+    // Maps an Eytzinger index to the corresponding sorted leaf index.
+    int[] leafIndex;
+    // The segment tree of the weights, the leaf i at index size() + i and the
+    // parent of index k at k/2, or null if none of the points is weighted.
+    Aggregate[] aggregates;
+    boolean orderByX;
+
+    FlatSingleDimensionalRangeTree(List<Point> points, boolean orderByX) {
+        this(points.toArray(new Point[0]), orderByX);
+    }
+
+    // The tree keeps the given array of sorted points as its leaves.
+    FlatSingleDimensionalRangeTree(Point[] points, boolean orderByX) {
+        int size = points.length;
+        this.orderByX = orderByX;
+        this.points = points;
+        this.coordinates = new int[size];
+        for (int i = 0; i < size; i++) {
+            coordinates[i] = orderByX ? points[i].getX() : points[i].getY();
+        }
+        this.keys = new int[size + 1];
+        this.leafIndex = new int[size + 1];
+        buildEytzinger(0, 1);
+        buildAggregates();
+    }
+
+    // Fill the Eytzinger array with an inorder walk of the implicit tree, which
+    // visits the sorted coordinates in order.
+    private int buildEytzinger(int i, int k) {
+        if (k < keys.length) {
+            i = buildEytzinger(i, 2 * k);
+            keys[k] = coordinates[i];
+            leafIndex[k] = i;
+            i++;
+            i = buildEytzinger(i, 2 * k + 1);
+        }
+        return i;
+    }
+
+    private void buildAggregates() {
+        int size = points.length;
+        for (int i = 0; i < size; i++) {
+            if (points[i] instanceof WeightedPoint weightedPoint) {
+                if (aggregates == null) {
+                    aggregates = new Aggregate[2 * size];
+                }
+                aggregates[size + i] = new Aggregate();
+                aggregates[size + i].add(weightedPoint.getWeight());
+            }
+        }
+        if (aggregates == null) {
+            return;
+        }
+        for (int k = size - 1; k > 0; k--) {
+            aggregates[k] = Aggregate.combine(aggregates[2 * k],
+                    aggregates[2 * k + 1]);
+        }
+    }
+
+    int size() {
+        return points.length;
+    }
+
+    // Index of the first leaf whose coordinate is greater than or equal to
+    // the given value, or size() if there is none.
+    // The descent only does a comparison and index arithmetic at each level,
+    // the final shift undoes the trailing right turns taken past the answer.
+    int lowerBound(int value) {
+        int k = 1;
+        while (k < keys.length) {
+            k = 2 * k + (keys[k] < value ? 1 : 0);
+        }
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        return k == 0 ? points.length : leafIndex[k];
+    }
+
+    // Index of the first leaf whose coordinate is greater than the given
+    // value, or size() if there is none.
+    int upperBound(int value) {
+        return value == Integer.MAX_VALUE ? points.length :
+                lowerBound(value + 1);
+    }
+
+    // Index of the first leaf within the x interval or the y interval for the
+    // window.
+    int from(Window window) {
+        return lowerBound(orderByX ? window.getStartX() : window.getStartY());
+    }
+
+    // Index after the last leaf within the interval, or from(window) if the
+    // interval is empty.
+    int to(Window window) {
+        return Math.max(from(window),
+                upperBound(orderByX ? window.getEndX() : window.getEndY()));
+    }
+
+    // To find points in the given window we do the following.
+    // a. Find the leaf slice for the x interval or the y interval for the
+    // window.
+    // b. Copy the slice of points into the output list.
+    void findPoints(Window window, List<Point> points) {
+        points.addAll(Arrays.asList(this.points).subList(from(window),
+                to(window)));
+    }
+
+    // Stream the slice of points in the given window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findPoints(Window window, PointSink sink) {
+        for (int i = from(window), to = to(window); i < to; i++) {
+            if (!sink.accept(points[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Count the points in the given window without reporting them.
+    // Time complexity = O(logn)
+    int count(Window window) {
+        return to(window) - from(window);
+    }
+
+    // Aggregate the weights of the weighted points in the given window into
+    // the result. Points without a weight are not aggregated.
+    // Time complexity = O(logn)
+    void aggregate(Window window, Aggregate result) {
+        if (aggregates == null) {
+            return;
+        }
+        int size = points.length;
+        for (int low = from(window) + size, high = to(window) + size;
+             low < high; low >>>= 1, high >>>= 1) {
+            if ((low & 1) == 1) {
+                result.add(aggregates[low++]);
+            }
+            if ((high & 1) == 1) {
+                result.add(aggregates[--high]);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        Set<Point> pointSet = new TreeSet<>(Utils.getPointXComparator());
+        do {
+            int coordinate = Utils.getRandomPositiveInteger(20);
+            pointSet.add(new Point(coordinate, coordinate));
+        } while (pointSet.size() < 10);
+        List<Point> points = new ArrayList<>(pointSet);
+        System.out.println("Input points::");
+        Utils.print(points);
+        // sorted the points, build the flat range tree now.
+        FlatSingleDimensionalRangeTree flatSingleDimensionalRangeTree =
+                new FlatSingleDimensionalRangeTree(points, /*orderByX=*/true);
+        Window window = new Window(7, 7, 20, 20);
+        List<Point> pointsReturned = new ArrayList<>();
+        flatSingleDimensionalRangeTree.findPoints(window, pointsReturned);
+        System.out.println("Points returned");
+        Utils.print(pointsReturned);
+    }
+}
@@ -1,6 +1,8 @@
 package com.geometric.tree;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import com.geometric.util.Geometric.*;
 import com.geometric.util.Utils;
@@ -20,17 +22,24 @@ public class IntervalTree {
     // c. The end points of the segments containing the median.
     // d. Left and Right subtrees.
     //
-    // For convenience this implementation stores a map to quickly locate a
-    // segment using its start or end point.
+    // The root also stores the start points of all the segments, for the
+    // window queries.
+    //
+    // The segments are numbered by their position in the sorted input, and
+    // the points in the range trees carry the number of their segment, which
+    // indexes the segment array shared by all the nodes.
     TwoDimensionalRangeTree twoDimensionalRangeTree =
             new TwoDimensionalRangeTree();
+    static final int PARALLEL_BUILD_THRESHOLD = 1 << 12;
     static class IntervalNode {
         int mid;
         TwoDimensionalRangeTree.RangeNode intersectingSegmentsStartPoints;
         TwoDimensionalRangeTree.RangeNode intersectingSegmentsEndPoints;
-        // use this data structure to overcome the current limitation of trying
-        // to find the segment to which the points found in the 2d range match.
-        Map<Point, Segment> pointToSegmentMap = new HashMap<>();
+        // The segments of the tree, indexed by the ids the points carry.
+        Segment[] segments;
+        // The start points of all the segments of the tree, kept by the root
+        // only.
+        TwoDimensionalRangeTree.RangeNode segmentStartPoints;
         IntervalNode left;
         IntervalNode right;
     }
@@ -47,6 +56,11 @@ public class IntervalTree {
         }
     }
 
+    // The segment of a point found in the range trees of the node.
+    Segment getSegment(IntervalNode node, Point point) {
+        return node.segments[((IndexedPoint) point).getIndex()];
+    }
+
     // Filter the sorted all segments to only choose the selected segments.
     // This will ensure the selected segments are in sorted order.
     List<Segment> findIntersectingSegments(List<Segment> allSegments,
@@ -68,62 +82,225 @@ public class IntervalTree {
     //    search in the left subtree. Then we add all the segments
     //    corresponding to the intersection points less than or equal to query
     //    value. We use the two-dimensional Range tree corresponding to the
-    //    start points and the pointToSegment map for this.
+    //    start points for this.
     //    ii) If the query value is greater than node's mid, we add all the
     //    segmens with intersecting points greater than or equal to the query
     //    value. We use the two-dimensional range tree corresponding to the
-    //    end points and the pointToSegment map for this.
+    //    end points for this.
     //    We continue the search in the right subtree.
-    //    iii) If the value is equal to the node's mid, we add the
-    //    intersecting segments and terminate the search at this node.
+    //    iii) If the value is equal to the node's mid, all the segments of
+    //    the node contain it. As in i), we add the segments with start
+    //    points within the Y range of the query line, and terminate the
+    //    search at this node.
     void findSegmentsCrossingLine(IntervalNode node, QueryLine queryLine,
                                   List<Segment> segments) {
+        findSegmentsCrossingLine(node, queryLine, segments::add);
+    }
+
+    // Stream the segments crossing the given vertical line to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findSegmentsCrossingLine(IntervalNode node, QueryLine queryLine,
+                                     SegmentSink sink) {
         if (node == null) {
-            return;
+            return true;
         }
         int queryX = queryLine.getX();
-        if (node.mid > queryX) {
+        // The points found in the 2d range trees are mapped to their segments
+        // as they are reported.
+        PointSink pointSink = point -> sink.accept(getSegment(node, point));
+        if (node.mid >= queryX) {
             // check those intervals in node that could possibly contain queryX.
-            findSegmentsCrossingLine(node.left, queryLine, segments);
+            if (node.mid > queryX &&
+                    !findSegmentsCrossingLine(node.left, queryLine, sink)) {
+                return false;
+            }
             Window window = new Window(Integer.MIN_VALUE,
                     queryLine.getStartY(), queryX, queryLine.getEndY());
-            List<Point> pointsReturned = new ArrayList<>();
-            twoDimensionalRangeTree.findPoints(node.intersectingSegmentsStartPoints,
-                    window, pointsReturned);
-            for (Point point: pointsReturned) {
-                segments.add(node.pointToSegmentMap.get(point));
-            }
-        } else if (node.mid < queryX) {
+            return twoDimensionalRangeTree.findPoints(
+                    node.intersectingSegmentsStartPoints, window, pointSink);
+        } else {
             Window window = new Window(queryX, queryLine.getStartY(),
                     Integer.MAX_VALUE, queryLine.getEndY());
-            List<Point> pointsReturned = new ArrayList<>();
-            twoDimensionalRangeTree.findPoints(node.intersectingSegmentsEndPoints,
-                    window, pointsReturned);
-            for (Point point: pointsReturned) {
-                segments.add(node.pointToSegmentMap.get(point));
+            if (!twoDimensionalRangeTree.findPoints(
+                    node.intersectingSegmentsEndPoints, window, pointSink)) {
+                return false;
             }
-            findSegmentsCrossingLine(node.right, queryLine, segments);
-        } else {
-            // queryX = mid.
-            // We may want to have this stored in a set independently.
-            segments.addAll(new HashSet<>(node.pointToSegmentMap.values()));
+            return findSegmentsCrossingLine(node.right, queryLine, sink);
         }
     }
 
-    // Build a two-dimensional range tree on the segment start or end points.
-    TwoDimensionalRangeTree.RangeNode buildTwoDimensionalRangeTreeForSegment(
-            IntervalNode intervalNode, List<Segment> segments,
-            boolean isStart) {
-        List<Point> pointsX = new ArrayList<>();
-        List<Point> pointsY = new ArrayList<>();
-        // We use the point to segment map to quickly deduce the segment whose
-        // endpoint is found in the range search.
+    // Find the horizontal segments that intersect the given window.
+    // A segment intersects the window if its Y coordinate is within the
+    // window's Y range, and it either
+    // a. crosses the left edge of the window, i.e. starts at or before its
+    // startX and ends at or after it, or
+    // b. starts within the window, after its startX.
+    // The two cases are disjoint, so each segment is reported exactly once.
+    // The first is the query for the segments crossing the left edge, and
+    // the second a query on the range tree of the start points of all the
+    // segments kept by the root.
+    // As for findSegmentsCrossingLine, the Y coordinate is checked on the
+    // endpoints stored in the range tree that is searched.
+    //
+    // NOTE:
+    // As the start points of all the segments are in a single range tree,
+    // no 2 of them may share an X or Y coordinate.
+    // Time Complexity = O(log^3n + k)
+    void findSegmentsInWindow(IntervalNode root, Window window,
+                              List<Segment> segments) {
+        findSegmentsInWindow(root, window, segments::add);
+    }
+
+    // Stream the segments that intersect the given window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findSegmentsInWindow(IntervalNode root, Window window,
+                                 SegmentSink sink) {
+        if (root == null) {
+            return true;
+        }
+        if (!findSegmentsCrossingLine(root, new QueryLine(window.getStartX(),
+                window.getStartY(), window.getEndY()), sink)) {
+            return false;
+        } else if (window.getStartX() == Integer.MAX_VALUE) {
+            return true;
+        }
+        return twoDimensionalRangeTree.findPoints(root.segmentStartPoints,
+                new Window(window.getStartX() + 1, window.getStartY(),
+                        window.getEndX(), window.getEndY()),
+                point -> sink.accept(getSegment(root, point)));
+    }
+
+    // Find the horizontal segments that cross each of the given vertical
+    // lines, in a single pass over the tree. The result has the segments for
+    // every line, in the order of the lines and of findSegmentsCrossingLine.
+    // a. The lines are sorted by their X coordinate once.
+    // b. Each node is visited once for the whole batch. The sorted lines at
+    // the node are split around its mid with two binary searches, instead of
+    // comparing every line on the way down.
+    // c. The lines left of the mid continue to the left subtree, and the ones
+    // right of it to the right subtree.
+    // d. Instead of a range tree search per line, the lines at a node are
+    // swept against the segments of the node, see sweepLines.
+    // The segments of a line are in the order of the nodes visited by
+    // findSegmentsCrossingLine, and sorted by Y within a node.
+    // Time Complexity = O((n + m)logn + k) for m lines
+    List<List<Segment>> findSegmentsCrossingLines(IntervalNode node,
+                                                  List<QueryLine> queryLines) {
+        List<List<Segment>> segments = new ArrayList<>(queryLines.size());
+        // The line index is kept in the low bits of the sort key.
+        long[] keys = new long[queryLines.size()];
+        for (int i = 0; i < queryLines.size(); i++) {
+            segments.add(new ArrayList<>());
+            keys[i] = ((long) queryLines.get(i).getX() << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        int[] xs = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+            xs[i] = (int) (keys[i] >> 32);
+        }
+        findSegmentsCrossingLines(node, queryLines, order, xs, 0, xs.length,
+                segments);
+        return segments;
+    }
+
+    // Index of the first sorted X coordinate in the slice greater than or
+    // equal to the value.
+    int lowerBound(int[] xs, int from, int to, long value) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (xs[mid] < value) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    // Answer the slice of the sorted lines at the node.
+    void findSegmentsCrossingLines(IntervalNode node, List<QueryLine> queryLines,
+                                   int[] order, int[] xs, int from, int to,
+                                   List<List<Segment>> segments) {
+        if (node == null || from == to) {
+            return;
+        }
+        int midFrom = lowerBound(xs, from, to, node.mid);
+        int midTo = lowerBound(xs, midFrom, to, (long) node.mid + 1);
+        findSegmentsCrossingLines(node.left, queryLines, order, xs, from,
+                midFrom, segments);
+        sweepLines(node, queryLines, order, from, midTo, segments,
+                /*isStart=*/true);
+        sweepLines(node, queryLines, order, midTo, to, segments,
+                /*isStart=*/false);
+        findSegmentsCrossingLines(node.right, queryLines, order, xs, midTo, to,
+                segments);
+    }
+
+    // Sweep the sorted lines of the slice against the segments of the node.
+    // The lines up to the mid cross the segments starting at or before them,
+    // so they are swept from left to right over the start points. The lines
+    // after the mid cross the segments ending at or after them, so they are
+    // swept from right to left over the end points.
+    // The sweep keeps the segments it passed in a set sorted by Y, and
+    // reports the ones within the Y range of each line.
+    // Time Complexity = O((s + m)logs + k) for s segments and m lines
+    void sweepLines(IntervalNode node, List<QueryLine> queryLines,
+                    int[] order, int from, int to,
+                    List<List<Segment>> segments, boolean isStart) {
+        if (from == to) {
+            return;
+        }
+        List<Point> points = new ArrayList<>();
+        twoDimensionalRangeTree.addLeafsInorder(isStart ?
+                node.intersectingSegmentsStartPoints :
+                node.intersectingSegmentsEndPoints, points::add);
+        // The Y coordinate of a passed point, with its segment id in the
+        // low bits.
+        TreeSet<Long> activeKeys = new TreeSet<>();
+        int next = isStart ? 0 : points.size() - 1;
+        for (int j = 0; j < to - from; j++) {
+            int i = isStart ? from + j : to - 1 - j;
+            QueryLine queryLine = queryLines.get(order[i]);
+            while (next >= 0 && next < points.size() &&
+                    (isStart ? points.get(next).getX() <= queryLine.getX() :
+                            points.get(next).getX() >= queryLine.getX())) {
+                Point point = points.get(next);
+                activeKeys.add(((long) point.getY() << 32) |
+                        ((IndexedPoint) point).getIndex());
+                next += isStart ? 1 : -1;
+            }
+            List<Segment> lineSegments = segments.get(order[i]);
+            for (long key: activeKeys.subSet(
+                    (long) queryLine.getStartY() << 32, true,
+                    ((long) queryLine.getEndY() << 32) | Integer.MAX_VALUE,
+                    true)) {
+                lineSegments.add(node.segments[(int) key]);
+            }
+        }
+    }
+
+    // The segment start or end points, carrying the ids of their segments.
+    List<Point> getSegmentPoints(List<Segment> segments,
+                                 Map<Segment, Integer> segmentIds,
+                                 boolean isStart) {
+        List<Point> points = new ArrayList<>();
         for (Segment segment: segments) {
             Point point = isStart ? segment.getStart() : segment.getEnd();
-            pointsX.add(point);
-            pointsY.add(point);
-            intervalNode.pointToSegmentMap.put(point, segment);
+            points.add(new IndexedPoint(point.getX(), point.getY(),
+                    segmentIds.get(segment)));
         }
+        return points;
+    }
+
+    // Build a two-dimensional range tree on the segment start or end points.
+    // The points carry the ids of their segments.
+    TwoDimensionalRangeTree.RangeNode buildTwoDimensionalRangeTreeForSegment(
+            List<Segment> segments, Map<Segment, Integer> segmentIds,
+            boolean isStart) {
+        List<Point> pointsX = getSegmentPoints(segments, segmentIds, isStart);
+        List<Point> pointsY = new ArrayList<>(pointsX);
         // The points are provided pre-sorted to build the 2D range tree.
         Collections.sort(pointsX, Utils.getPointXComparator());
         Collections.sort(pointsY, Utils.getPointYComparator());
@@ -132,82 +309,224 @@ public class IntervalTree {
         return root;
     }
 
-    // Handles building an interval tree for a single segment.
-    IntervalNode buildForSingleSegment(Segment segment) {
-        IntervalNode node = new IntervalNode();
-        node.mid = segment.getXInterval().getStart();
+    // The task building the same range tree in the fork/join pool.
+    TwoDimensionalRangeTree.BuildTask buildTwoDimensionalRangeTreeTask(
+            List<Segment> segments, Map<Segment, Integer> segmentIds,
+            boolean isStart) {
+        List<Point> pointsX = getSegmentPoints(segments, segmentIds, isStart);
+        List<Point> pointsY = new ArrayList<>(pointsX);
+        Collections.sort(pointsX, Utils.getPointXComparator());
+        Collections.sort(pointsY, Utils.getPointYComparator());
+        return twoDimensionalRangeTree.new BuildTask(pointsX, pointsY);
+    }
+
+    // Set the segment array of the node, and build the two range trees on
+    // the start and end points of the segments containing the median.
+    void buildIntersectingSegments(IntervalNode node,
+                                   List<Segment> segmentsSortedByStart,
+                                   List<Segment> segmentsSortedByEnd,
+                                   Segment[] segments,
+                                   Map<Segment, Integer> segmentIds) {
+        node.segments = segments;
         node.intersectingSegmentsStartPoints =
-                buildTwoDimensionalRangeTreeForSegment(node,
-                        List.of(segment), /*isStart=*/true);
+                buildTwoDimensionalRangeTreeForSegment(segmentsSortedByStart,
+                        segmentIds, /*isStart=*/true);
         node.intersectingSegmentsEndPoints =
-                buildTwoDimensionalRangeTreeForSegment(node,
-                        List.of(segment), /*isStart=*/false);
-        return node;
+                buildTwoDimensionalRangeTreeForSegment(segmentsSortedByEnd,
+                        segmentIds, /*isStart=*/false);
     }
 
-    // Build an interval tree from given list of segments sorted both by the
-    // start and end point.
-    IntervalNode build(List<Segment> segmentsSortedByStart,
-                       List<Segment> segmentsSortedByEnd) {
-        if (segmentsSortedByStart.isEmpty()) {
-            return null;
-        } else if (segmentsSortedByStart.size() == 1) {
-            //  Handle the single segment case separately.
-            return buildForSingleSegment(segmentsSortedByStart.getFirst());
-        }
-
+    // The segments of a node partitioned by the median into 3 lists, each
+    // sorted both by the start and end point.
+    // a. Segments completely to the left of the median point.
+    // b. Segments containing the median point.
+    // c. Segments completely to the right of the median point.
+    static class Partition {
         List<Segment> leftSegmentsSortedByStart = new ArrayList<>();
-        List<Segment> rightSegmentsSortedByStart = new ArrayList<>();
+        List<Segment> leftSegmentsSortedByEnd;
         List<Segment> intersectingSegmentsSortedByStart = new ArrayList<>();
-        int xMedian = xMedian(segmentsSortedByStart);
-        IntervalNode node = new IntervalNode();
-        node.mid = xMedian;
-        // Partition the input segments into 3 lists.
-        // a. Segments completely to the left of the median point.
-        // b. Segments containing the median point.
-        // c. Segments completely to the right of the median point.
+        List<Segment> intersectingSegmentsSortedByEnd;
+        List<Segment> rightSegmentsSortedByStart = new ArrayList<>();
+        List<Segment> rightSegmentsSortedByEnd;
+    }
+
+    Partition partition(List<Segment> segmentsSortedByStart,
+                        List<Segment> segmentsSortedByEnd, int xMedian) {
+        Partition partition = new Partition();
         for (int i = 0; i < segmentsSortedByStart.size(); i++) {
             Segment currentSegment =
                     segmentsSortedByStart.get(i);
             Interval currentInterval = currentSegment.getXInterval();
             if (currentInterval.getEnd() < xMedian) {
-                leftSegmentsSortedByStart.add(currentSegment);
+                partition.leftSegmentsSortedByStart.add(currentSegment);
             } else if (currentInterval.getStart() > xMedian) {
-                rightSegmentsSortedByStart.add(currentSegment);
+                partition.rightSegmentsSortedByStart.add(currentSegment);
             } else {
-                intersectingSegmentsSortedByStart.add(currentSegment);
+                partition.intersectingSegmentsSortedByStart.add(
+                        currentSegment);
             }
         }
 
         // Use the list intersection method to retain the sorted order from
         // the input lists.
-        List<Segment> leftSegmentsSortedByEnd =
+        partition.leftSegmentsSortedByEnd =
                 findIntersectingSegments(segmentsSortedByEnd,
-                        new HashSet<>(leftSegmentsSortedByStart));
-        List<Segment> rightSegmentsSortedByEnd =
+                        new HashSet<>(partition.leftSegmentsSortedByStart));
+        partition.rightSegmentsSortedByEnd =
                 findIntersectingSegments(segmentsSortedByEnd,
-                        new HashSet<>(rightSegmentsSortedByStart));
-        List<Segment> intersectingSegmentsSortedByEnd =
+                        new HashSet<>(partition.rightSegmentsSortedByStart));
+        partition.intersectingSegmentsSortedByEnd =
                 findIntersectingSegments(segmentsSortedByEnd,
-                        new HashSet<>(intersectingSegmentsSortedByStart));
+                        new HashSet<>(
+                                partition.intersectingSegmentsSortedByStart));
+        return partition;
+    }
+
+    // Build an interval tree from given list of segments sorted both by the
+    // start and end point.
+    // The segments are numbered by their position in the start order.
+    IntervalNode build(List<Segment> segmentsSortedByStart,
+                       List<Segment> segmentsSortedByEnd) {
+        Segment[] segments = segmentsSortedByStart.toArray(new Segment[0]);
+        Map<Segment, Integer> segmentIds = buildSegmentIds(segments);
+        IntervalNode root = build(segmentsSortedByStart, segmentsSortedByEnd,
+                segments, segmentIds);
+        if (root != null) {
+            root.segmentStartPoints = buildTwoDimensionalRangeTreeForSegment(
+                    segmentsSortedByStart, segmentIds, /*isStart=*/true);
+        }
+        return root;
+    }
+
+    Map<Segment, Integer> buildSegmentIds(Segment[] segments) {
+        Map<Segment, Integer> segmentIds = new HashMap<>();
+        for (int i = 0; i < segments.length; i++) {
+            segmentIds.put(segments[i], i);
+        }
+        return segmentIds;
+    }
+
+    IntervalNode build(List<Segment> segmentsSortedByStart,
+                       List<Segment> segmentsSortedByEnd, Segment[] segments,
+                       Map<Segment, Integer> segmentIds) {
+        if (segmentsSortedByStart.isEmpty()) {
+            return null;
+        } else if (segmentsSortedByStart.size() == 1) {
+            //  Handle the single segment case separately.
+            IntervalNode node = new IntervalNode();
+            node.mid = segmentsSortedByStart.getFirst().getXInterval()
+                    .getStart();
+            buildIntersectingSegments(node, segmentsSortedByStart,
+                    segmentsSortedByEnd, segments, segmentIds);
+            return node;
+        }
+        int xMedian = xMedian(segmentsSortedByStart);
+        IntervalNode node = new IntervalNode();
+        node.mid = xMedian;
+        Partition partition = partition(segmentsSortedByStart,
+                segmentsSortedByEnd, xMedian);
 
         // Construct the interval node.
         // Build a 2D range tree so as to quickly be able to search by X and
         // Y coordinates.
         // Build for segment start and segment end as we would encounter them
         // while traversing the subtrees.
-        node.intersectingSegmentsStartPoints =
-                buildTwoDimensionalRangeTreeForSegment(node,
-                        intersectingSegmentsSortedByStart, /*isStart=*/true);
-        node.intersectingSegmentsEndPoints =
-                buildTwoDimensionalRangeTreeForSegment(node,
-                        intersectingSegmentsSortedByEnd, /*isStart=*/false);
-        node.left = build(leftSegmentsSortedByStart, leftSegmentsSortedByEnd);
-        node.right = build(rightSegmentsSortedByStart,
-                rightSegmentsSortedByEnd);
+        buildIntersectingSegments(node,
+                partition.intersectingSegmentsSortedByStart,
+                partition.intersectingSegmentsSortedByEnd, segments,
+                segmentIds);
+        node.left = build(partition.leftSegmentsSortedByStart,
+                partition.leftSegmentsSortedByEnd, segments, segmentIds);
+        node.right = build(partition.rightSegmentsSortedByStart,
+                partition.rightSegmentsSortedByEnd, segments, segmentIds);
         return node;
     }
 
+    // Builds a subtree in the fork/join pool. The left subtree and the two
+    // range trees of the node are forked while the right subtree is built,
+    // and the range trees of the large nodes are built in parallel in turn.
+    // Subtrees with fewer than PARALLEL_BUILD_THRESHOLD segments are built
+    // sequentially.
+    @SuppressWarnings("serial")
+    class BuildTask extends RecursiveTask<IntervalNode> {
+        List<Segment> segmentsSortedByStart;
+        List<Segment> segmentsSortedByEnd;
+        Segment[] segments;
+        Map<Segment, Integer> segmentIds;
+        BuildTask(List<Segment> segmentsSortedByStart,
+                  List<Segment> segmentsSortedByEnd, Segment[] segments,
+                  Map<Segment, Integer> segmentIds) {
+            this.segmentsSortedByStart = segmentsSortedByStart;
+            this.segmentsSortedByEnd = segmentsSortedByEnd;
+            this.segments = segments;
+            this.segmentIds = segmentIds;
+        }
+
+        @Override
+        protected IntervalNode compute() {
+            if (segmentsSortedByStart.size() < PARALLEL_BUILD_THRESHOLD) {
+                return build(segmentsSortedByStart, segmentsSortedByEnd,
+                        segments, segmentIds);
+            }
+            int xMedian = xMedian(segmentsSortedByStart);
+            IntervalNode node = new IntervalNode();
+            node.mid = xMedian;
+            Partition partition = partition(segmentsSortedByStart,
+                    segmentsSortedByEnd, xMedian);
+            node.segments = segments;
+
+            TwoDimensionalRangeTree.BuildTask startPointsTask =
+                    buildTwoDimensionalRangeTreeTask(
+                            partition.intersectingSegmentsSortedByStart,
+                            segmentIds, /*isStart=*/true);
+            startPointsTask.fork();
+            TwoDimensionalRangeTree.BuildTask endPointsTask =
+                    buildTwoDimensionalRangeTreeTask(
+                            partition.intersectingSegmentsSortedByEnd,
+                            segmentIds, /*isStart=*/false);
+            endPointsTask.fork();
+            BuildTask leftTask = new BuildTask(
+                    partition.leftSegmentsSortedByStart,
+                    partition.leftSegmentsSortedByEnd, segments, segmentIds);
+            leftTask.fork();
+            BuildTask rightTask = new BuildTask(
+                    partition.rightSegmentsSortedByStart,
+                    partition.rightSegmentsSortedByEnd, segments, segmentIds);
+
+            node.right = rightTask.compute();
+            node.left = leftTask.join();
+            node.intersectingSegmentsEndPoints = endPointsTask.join();
+            node.intersectingSegmentsStartPoints = startPointsTask.join();
+            return node;
+        }
+    }
+
+    // Build the interval tree on a fork/join pool with the given parallelism.
+    // The tree is identical to the one returned by the sequential build.
+    IntervalNode build(List<Segment> segmentsSortedByStart,
+                       List<Segment> segmentsSortedByEnd, int parallelism) {
+        Segment[] segments = segmentsSortedByStart.toArray(new Segment[0]);
+        Map<Segment, Integer> segmentIds = buildSegmentIds(segments);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            TwoDimensionalRangeTree.BuildTask startPointsTask =
+                    buildTwoDimensionalRangeTreeTask(segmentsSortedByStart,
+                            segmentIds, /*isStart=*/true);
+            forkJoinPool.execute(startPointsTask);
+            IntervalNode root = forkJoinPool.invoke(new BuildTask(
+                    segmentsSortedByStart, segmentsSortedByEnd, segments,
+                    segmentIds));
+            TwoDimensionalRangeTree.RangeNode segmentStartPoints =
+                    startPointsTask.join();
+            if (root != null) {
+                root.segmentStartPoints = segmentStartPoints;
+            }
+            return root;
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
     public static void main(String[] args) {
         // This Interval tree is for horizontal axis parallel segments.
         IntervalTree intervalTree = new IntervalTree();
@@ -258,5 +577,40 @@ public class IntervalTree {
         for (Segment segment: outputSegments) {
             System.out.println(segment);
         }
+
+        Window window = new Window(10, 10, 20, 30);
+        System.out.println("Segments that intersect the window " + window +
+                ":");
+        List<Segment> windowSegments = new ArrayList<>();
+        intervalTree.findSegmentsInWindow(root, window, windowSegments);
+        for (Segment segment: windowSegments) {
+            System.out.println(segment);
+        }
+
+        // Answer a batch of query lines in a single pass.
+        List<QueryLine> queryLines = List.of(new QueryLine(30, 0, 40),
+                queryLine, new QueryLine(5, 0, 20));
+        List<List<Segment>> batchOutputSegments =
+                intervalTree.findSegmentsCrossingLines(root, queryLines);
+        for (int i = 0; i < queryLines.size(); i++) {
+            System.out.println("Segments that intersect the query line " +
+                    queryLines.get(i) + ":");
+            for (Segment segment: batchOutputSegments.get(i)) {
+                System.out.println(segment);
+            }
+        }
+
+        // The parallel build returns the same tree.
+        IntervalNode parallelRoot = intervalTree.build(
+                new ArrayList<>(segmentsSortedByStartX),
+                new ArrayList<>(segmentsSortedByEndX), /*parallelism=*/2);
+        List<Segment> parallelOutputSegments = new ArrayList<>();
+        intervalTree.findSegmentsCrossingLine(parallelRoot, queryLine,
+                parallelOutputSegments);
+        System.out.println("Segments that intersect the query line with " +
+                "parallel build:");
+        for (Segment segment: parallelOutputSegments) {
+            System.out.println(segment);
+        }
     }
 }
\ No newline at end of file
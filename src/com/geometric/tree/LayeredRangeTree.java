@@ -0,0 +1,305 @@
+package com.geometric.tree;
+
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.List;
+import com.geometric.util.Geometric.*;
+import com.geometric.util.Utils;
+
+public class LayeredRangeTree {
+    // The layered range tree is the two-dimensional range tree with
+    // fractional cascading applied to its canonical sets.
+    // a. The Range tree is built using the X coordinates of the points, as in
+    // the two-dimensional range tree.
+    // b. The canonical set of a node is an array of its subtree points sorted
+    // by the Y coordinate, instead of a single dimensional range tree.
+    // c. Every entry of the canonical set stores a pointer into the canonical
+    // sets of the left and right children, to the first entry whose Y
+    // coordinate is greater than or equal to its own.
+    //
+    // A query does a single binary search for the window's startY in the
+    // canonical set of the split node. The pointers then give the position of
+    // startY in the canonical set of every node visited below it in O(1),
+    // which brings the query time down from O(log^2n + k) to O(logn + k).
+    //
+    // When the split node has at most scanThreshold points, the slice of its
+    // canonical set within the window's Y range is scanned with the
+    // WindowScan instead of walking down the tree.
+    //
+    // As for the two-dimensional range tree the points are provided sorted
+    // by X and Y coordinates.
+    static final int DEFAULT_SCAN_THRESHOLD = 256;
+    int scanThreshold = DEFAULT_SCAN_THRESHOLD;
+    static class LayeredNode {
+        Point point;
+        // Canonical set sorted by the Y coordinate, and its coordinates.
+        Point[] pointsByY;
+        int[] xs;
+        int[] ys;
+        // Cascading pointers into the children's canonical sets. Both arrays
+        // have an extra trailing entry for searches past the last point.
+        int[] leftPointers;
+        int[] rightPointers;
+        LayeredNode left;
+        LayeredNode right;
+        LayeredNode(Point point) {
+            this.point = point;
+        }
+
+        boolean isLeaf() {
+            return left == null && right == null;
+        }
+    }
+
+    // Find the split node for the given range, i.e. the node where left subtree
+    // has a key with a value less than the maxima of the range, and the right
+    // subtree has a key with value greater than the minima of the range.
+    LayeredNode findSplitNode(LayeredNode node, Window window) {
+        while (node != null) {
+            if (node.point.getX() < window.getStartX()) {
+                node = node.right;
+            } else if (node.point.getX() > window.getEndX()) {
+                node = node.left;
+            } else {
+                break;
+            }
+        }
+        return node;
+    }
+
+    // Index of the first entry in the canonical set whose Y coordinate is
+    // greater than or equal to the given value.
+    int lowerBound(int[] ys, int value) {
+        int low = 0;
+        int high = ys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ys[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Report the canonical set entries from the given index onwards that are
+    // within the Y coordinates for the window.
+    // Returns false if the sink stopped the traversal.
+    boolean addCanonicalPoints(LayeredNode node, int index, Window window,
+                               PointSink sink) {
+        for (int i = index; i < node.ys.length &&
+                node.ys[i] <= window.getEndY(); i++) {
+            if (!sink.accept(node.pointsByY[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Accumulate the subtree points within the Window as we walk down the
+    // path from the split node. The index is the position of the window's
+    // startY in the canonical set of the node and it is carried down with the
+    // cascading pointers.
+    // Returns false if the sink stopped the traversal.
+    boolean findSubtreePointsInWindow(LayeredNode node, int index,
+                                      Window window, PointSink sink,
+                                      boolean isLeftSubtree) {
+        while (node != null && !node.isLeaf()) {
+            if (isLeftSubtree) {
+                if (node.point.getX() >= window.getStartX()) {
+                    if (!addCanonicalPoints(node.right,
+                            node.rightPointers[index], window, sink)) {
+                        return false;
+                    }
+                    index = node.leftPointers[index];
+                    node = node.left;
+                } else {
+                    index = node.rightPointers[index];
+                    node = node.right;
+                }
+            } else {
+                if (node.point.getX() <= window.getEndX()) {
+                    if (!addCanonicalPoints(node.left,
+                            node.leftPointers[index], window, sink)) {
+                        return false;
+                    }
+                    index = node.rightPointers[index];
+                    node = node.right;
+                } else {
+                    index = node.leftPointers[index];
+                    node = node.left;
+                }
+            }
+        }
+        if (node != null && window.isPointInWindow(node.point)) {
+            return sink.accept(node.point);
+        }
+        return true;
+    }
+
+    // To find points in the given window we do the following.
+    // a. Find split node using the X coordinates of the window.
+    // b. Binary search the window's startY in the split node's canonical set.
+    // c. Accumulate points from the left and right subtrees of the split
+    // node that are within the window, following the cascading pointers.
+    void findPoints(LayeredNode node, Window window, List<Point> points) {
+        findPoints(node, window, points::add);
+    }
+
+    // Stream the points in the given window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findPoints(LayeredNode node, Window window, PointSink sink) {
+        LayeredNode splitNode = findSplitNode(node, window);
+        if (splitNode == null) {
+            return true;
+        } else if (splitNode.isLeaf()) {
+            if (window.isPointInWindow(splitNode.point)) {
+                return sink.accept(splitNode.point);
+            }
+            return true;
+        }
+        int index = lowerBound(splitNode.ys, window.getStartY());
+        if (splitNode.ys.length <= scanThreshold) {
+            return scanCanonicalPoints(splitNode, index, window, sink);
+        }
+        return findSubtreePointsInWindow(splitNode.left,
+                splitNode.leftPointers[index], window, sink,
+                /*isLeftSubtree=*/true) &&
+                findSubtreePointsInWindow(splitNode.right,
+                        splitNode.rightPointers[index], window, sink,
+                        /*isLeftSubtree=*/false);
+    }
+
+    // Scan the canonical set entries from the given index up to the window's
+    // endY for the points within the window.
+    boolean scanCanonicalPoints(LayeredNode node, int index, Window window,
+                                PointSink sink) {
+        int end = window.getEndY() == Integer.MAX_VALUE ? node.ys.length :
+                lowerBound(node.ys, window.getEndY() + 1);
+        if (index >= end) {
+            return true;
+        }
+        int[] matches = new int[end - index];
+        int count = WindowScan.getInstance().scan(node.xs, node.ys, index, end,
+                window, matches);
+        for (int i = 0; i < count; i++) {
+            if (!sink.accept(node.pointsByY[matches[i]])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The child's canonical set is a subsequence of the parent's, so the
+    // pointer for a parent entry is the number of child entries before it.
+    int[] buildCascadingPointers(List<Point> pointsY, List<Point> childPointsY) {
+        int[] pointers = new int[pointsY.size() + 1];
+        int j = 0;
+        for (int i = 0; i < pointsY.size(); i++) {
+            pointers[i] = j;
+            if (j < childPointsY.size() &&
+                    pointsY.get(i) == childPointsY.get(j)) {
+                j++;
+            }
+        }
+        pointers[pointsY.size()] = j;
+        return pointers;
+    }
+
+    void buildCanonicalSet(LayeredNode node, List<Point> pointsY) {
+        node.pointsByY = pointsY.toArray(new Point[0]);
+        node.xs = new int[node.pointsByY.length];
+        node.ys = new int[node.pointsByY.length];
+        for (int i = 0; i < node.ys.length; i++) {
+            node.xs[i] = node.pointsByY[i].getX();
+            node.ys[i] = node.pointsByY[i].getY();
+        }
+    }
+
+    // Recursively build out the layered range tree.
+    //
+    // NOTE:
+    // As for the two-dimensional range tree, we cannot have the same x or y
+    // coordinates for any 2 points.
+    LayeredNode build(List<Point> pointsX, List<Point> pointsY) {
+        if (pointsX.isEmpty()) {
+            return null;
+        } else if (pointsX.size() == 1) {
+            LayeredNode node = new LayeredNode(pointsX.getFirst());
+            buildCanonicalSet(node, pointsY);
+            return node;
+        }
+
+        int medianX = Utils.median(pointsX, true);
+        int medianY = Utils.median(pointsY, false);
+        LayeredNode node = new LayeredNode(new Point(medianX, medianY));
+        int i;
+        for (i = 0; i < pointsX.size(); i++) {
+            if (pointsX.get(i).getX() > medianX) {
+                break;
+            }
+        }
+
+        buildCanonicalSet(node, pointsY);
+        List<Point> leftSubtreePointsSortedByX = pointsX.subList(0, i);
+        List<Point> rightSubtreePointsSortedByX = pointsX.subList(i,
+                pointsX.size());
+        // The points are split by their X coordinate, so a single pass over
+        // the points sorted by Y keeps both halves sorted by Y.
+        List<Point> leftSubtreePointsSortedByY = new ArrayList<>();
+        List<Point> rightSubtreePointsSortedByY = new ArrayList<>();
+        for (Point point: pointsY) {
+            if (point.getX() > medianX) {
+                rightSubtreePointsSortedByY.add(point);
+            } else {
+                leftSubtreePointsSortedByY.add(point);
+            }
+        }
+        node.leftPointers = buildCascadingPointers(pointsY,
+                leftSubtreePointsSortedByY);
+        node.rightPointers = buildCascadingPointers(pointsY,
+                rightSubtreePointsSortedByY);
+
+        node.left = build(leftSubtreePointsSortedByX,
+                leftSubtreePointsSortedByY);
+        node.right = build(rightSubtreePointsSortedByX,
+                rightSubtreePointsSortedByY);
+        return node;
+    }
+
+    public static void main(String[] args) {
+        LayeredRangeTree layeredRangeTree = new LayeredRangeTree();
+        Set<Point> pointSetX = new TreeSet<>(Utils.getPointXComparator());
+        Set<Point> pointSetY = new TreeSet<>(Utils.getPointYComparator());
+        Set<Integer> seenX = new HashSet<>();
+        Set<Integer> seenY = new HashSet<>();
+        do {
+            Point point = new Point(Utils.getRandomPositiveInteger(40),
+                    Utils.getRandomPositiveInteger(40));
+            // The x and y coordinates of any 2 points need to be unique.
+            if (seenX.contains(point.getX()) || seenY.contains(point.getY())) {
+                continue;
+            }
+            seenX.add(point.getX());
+            seenY.add(point.getY());
+            pointSetX.add(point);
+            pointSetY.add(point);
+        } while (pointSetX.size() < 10);
+        List<Point> pointsX = new ArrayList<>(pointSetX);
+        List<Point> pointsY = new ArrayList<>(pointSetY);
+        System.out.println("Input points::");
+        Utils.print(pointsX);
+        Utils.print(pointsY);
+
+        // sorted the points, build the layered range tree now.
+        LayeredNode root = layeredRangeTree.build(pointsX, pointsY);
+        Window window = new Window(1, 1, 20, 40);
+        List<Point> pointsReturned = new ArrayList<>();
+        layeredRangeTree.findPoints(root, window, pointsReturned);
+        System.out.println("Points returned");
+        Utils.print(pointsReturned);
+    }
+}
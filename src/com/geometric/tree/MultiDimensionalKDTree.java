@@ -0,0 +1,356 @@
+package com.geometric.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import com.geometric.util.Geometric.*;
+import com.geometric.util.Utils;
+
+public class MultiDimensionalKDTree {
+    // The KD tree generalized to any number of dimensions, with a choice of
+    // the rule that splits the cell of every node.
+    //
+    // Build
+    // =====
+    // a. A subtree with at most bucketSize points becomes a leaf, holding
+    // a bucket of points.
+    // b. Every other node splits its cell in two by a value of one dimension,
+    // and stores the dimension with the value. The points on the left have a
+    // coordinate less than or equal to the value, and the points on the
+    // right greater than or equal to it.
+    // c. The root cell is the bounding box of the points.
+    //
+    // Split Rules
+    // ===========
+    // a. CYCLING splits at the median, by the dimensions in turn, which is
+    // the two-dimensional KD tree's alternation of X and Y.
+    // b. WIDEST_SPREAD splits at the median, by the dimension in which the
+    // points of the node are most spread out.
+    // c. SLIDING_MIDPOINT splits the longest side of the cell at its
+    // midpoint. If all the points are on one side, the split slides to the
+    // nearest point so that no side is empty.
+    // The median rules make long thin cells on clustered points, as every
+    // split cuts through the cluster. The sliding midpoint keeps the cells
+    // fat, so empty space is cut away in a few splits and a window query on
+    // clustered points visits about as many cells as on uniform points.
+    //
+    // Query
+    // =====
+    // The cell of each node is kept in the start and end arrays as the query
+    // walks down. A cell within the window is reported without checking its
+    // points, and a cell outside the window is skipped.
+    enum SplitRule {
+        CYCLING,
+        WIDEST_SPREAD,
+        SLIDING_MIDPOINT
+    }
+
+    static final int DEFAULT_BUCKET_SIZE = 8;
+
+    static class KDNode {
+        int splitDimension;
+        int splitValue;
+        KDNode left;
+        KDNode right;
+        // The points of a leaf.
+        MultiDimensionalPoint[] points;
+        boolean isLeaf() {
+            return left == null && right == null;
+        }
+    }
+
+    int dimensions;
+    SplitRule splitRule;
+    int bucketSize;
+    KDNode root;
+    // The bounding box of all the points, the cell of the root.
+    int[] cellStarts;
+    int[] cellEnds;
+
+    MultiDimensionalKDTree(List<MultiDimensionalPoint> points, int dimensions,
+                           SplitRule splitRule) {
+        this(points, dimensions, splitRule, DEFAULT_BUCKET_SIZE);
+    }
+
+    MultiDimensionalKDTree(List<MultiDimensionalPoint> points, int dimensions,
+                           SplitRule splitRule, int bucketSize) {
+        this.dimensions = dimensions;
+        this.splitRule = splitRule;
+        this.bucketSize = Math.max(1, bucketSize);
+        cellStarts = new int[dimensions];
+        cellEnds = new int[dimensions];
+        MultiDimensionalPoint[] pointArray =
+                points.toArray(new MultiDimensionalPoint[0]);
+        if (pointArray.length == 0) {
+            return;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            cellStarts[i] = min(pointArray, 0, pointArray.length, i);
+            cellEnds[i] = max(pointArray, 0, pointArray.length, i);
+        }
+        root = build(pointArray, 0, pointArray.length, 0, cellStarts.clone(),
+                cellEnds.clone());
+    }
+
+    int min(MultiDimensionalPoint[] points, int from, int to, int dimension) {
+        int min = Integer.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, points[i].getCoordinate(dimension));
+        }
+        return min;
+    }
+
+    int max(MultiDimensionalPoint[] points, int from, int to, int dimension) {
+        int max = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, points[i].getCoordinate(dimension));
+        }
+        return max;
+    }
+
+    long spread(MultiDimensionalPoint[] points, int from, int to,
+                int dimension) {
+        return (long) max(points, from, to, dimension) -
+                min(points, from, to, dimension);
+    }
+
+    // The dimension in which the points of the slice are most spread out, or
+    // -1 if all the points are the same.
+    int widestSpreadDimension(MultiDimensionalPoint[] points, int from, int to) {
+        int widestDimension = -1;
+        long widestSpread = 0;
+        for (int i = 0; i < dimensions; i++) {
+            long spread = spread(points, from, to, i);
+            if (spread > widestSpread) {
+                widestSpread = spread;
+                widestDimension = i;
+            }
+        }
+        return widestDimension;
+    }
+
+    // Recursively build the subtree for the slice of points, which are
+    // reordered in place. The cell arrays are owned by the call.
+    // Time Complexity = O(nlogn) for the median rules
+    KDNode build(MultiDimensionalPoint[] points, int from, int to, int depth,
+                 int[] cellStarts, int[] cellEnds) {
+        KDNode node = new KDNode();
+        int widestDimension = to - from <= bucketSize ? -1 :
+                widestSpreadDimension(points, from, to);
+        // A bucket, or a slice of copies of the same point, is a leaf.
+        if (widestDimension < 0) {
+            node.points = Arrays.copyOfRange(points, from, to);
+            return node;
+        }
+        int mid;
+        if (splitRule == SplitRule.SLIDING_MIDPOINT) {
+            mid = slidingMidpointSplit(node, points, from, to, cellStarts,
+                    cellEnds, widestDimension);
+        } else {
+            node.splitDimension = splitRule == SplitRule.CYCLING ?
+                    depth % dimensions : widestDimension;
+            mid = (from + to) >>> 1;
+            select(points, from, to - 1, mid, node.splitDimension);
+            node.splitValue = points[mid].getCoordinate(node.splitDimension);
+        }
+
+        int[] leftCellEnds = cellEnds.clone();
+        leftCellEnds[node.splitDimension] = node.splitValue;
+        int[] rightCellStarts = cellStarts.clone();
+        rightCellStarts[node.splitDimension] = node.splitValue;
+        node.left = build(points, from, mid, depth + 1, cellStarts,
+                leftCellEnds);
+        node.right = build(points, mid, to, depth + 1, rightCellStarts,
+                cellEnds);
+        return node;
+    }
+
+    // Split the longest side of the cell at its midpoint, and partition the
+    // points. Returns the index of the first point on the right.
+    // The longest side is chosen among the dimensions in which the points
+    // are spread out, with the widest spread dimension as the fallback, so
+    // the points are never all on one side after the slide.
+    int slidingMidpointSplit(KDNode node, MultiDimensionalPoint[] points,
+                             int from, int to, int[] cellStarts,
+                             int[] cellEnds, int widestDimension) {
+        int dimension = widestDimension;
+        long longestSide = -1;
+        for (int i = 0; i < dimensions; i++) {
+            long side = (long) cellEnds[i] - cellStarts[i];
+            if (side > longestSide && spread(points, from, to, i) > 0) {
+                longestSide = side;
+                dimension = i;
+            }
+        }
+        int splitValue = (int) (((long) cellStarts[dimension] +
+                cellEnds[dimension]) >> 1);
+        int mid = partition(points, from, to, dimension, splitValue);
+        if (mid == from) {
+            // All the points are to the right, slide the split to the lowest.
+            splitValue = min(points, from, to, dimension);
+            mid = partition(points, from, to, dimension, splitValue);
+        } else if (mid == to) {
+            // All the points are to the left, slide the split to the highest
+            // and keep the points at it on the right.
+            splitValue = max(points, from, to, dimension);
+            mid = partition(points, from, to, dimension, splitValue - 1);
+        }
+        node.splitDimension = dimension;
+        node.splitValue = splitValue;
+        return mid;
+    }
+
+    // Move the points with a coordinate less than or equal to the value to
+    // the front of the slice, and return the index of the first point after.
+    int partition(MultiDimensionalPoint[] points, int from, int to,
+                  int dimension, int value) {
+        int i = from;
+        for (int j = from; j < to; j++) {
+            if (points[j].getCoordinate(dimension) <= value) {
+                MultiDimensionalPoint swap = points[i];
+                points[i] = points[j];
+                points[j] = swap;
+                i++;
+            }
+        }
+        return i;
+    }
+
+    // Quickselect with a median of three pivot, which places the k-th
+    // smallest coordinate at index k of the inclusive slice.
+    void select(MultiDimensionalPoint[] points, int low, int high, int k,
+                int dimension) {
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int a = points[low].getCoordinate(dimension);
+            int b = points[mid].getCoordinate(dimension);
+            int c = points[high].getCoordinate(dimension);
+            int pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (points[i].getCoordinate(dimension) < pivot) {
+                    i++;
+                }
+                while (points[j].getCoordinate(dimension) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    MultiDimensionalPoint swap = points[i];
+                    points[i] = points[j];
+                    points[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // We add the points of the leaves in order.
+    // Returns false if the sink stopped the traversal.
+    boolean addLeafsInorder(KDNode node, PointSink sink) {
+        if (node.isLeaf()) {
+            for (MultiDimensionalPoint point: node.points) {
+                if (!sink.accept(point)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return addLeafsInorder(node.left, sink) &&
+                addLeafsInorder(node.right, sink);
+    }
+
+    // Stream the points in the subtree that lie within the window to the
+    // sink. The cell arrays hold the cell of the node, and are restored
+    // before returning.
+    // Returns false if the sink stopped the query.
+    boolean findSubtreePointsWithinWindow(KDNode node,
+                                          MultiDimensionalWindow window,
+                                          PointSink sink, int[] cellStarts,
+                                          int[] cellEnds) {
+        boolean isCellInWindow = true;
+        for (int i = 0; i < dimensions; i++) {
+            if (cellStarts[i] > window.getEnd(i) ||
+                    cellEnds[i] < window.getStart(i)) {
+                return true;
+            }
+            isCellInWindow &= cellStarts[i] >= window.getStart(i) &&
+                    cellEnds[i] <= window.getEnd(i);
+        }
+        if (isCellInWindow) {
+            return addLeafsInorder(node, sink);
+        } else if (node.isLeaf()) {
+            for (MultiDimensionalPoint point: node.points) {
+                if (window.isPointInWindow(point) && !sink.accept(point)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int dimension = node.splitDimension;
+        int cellEnd = cellEnds[dimension];
+        cellEnds[dimension] = node.splitValue;
+        boolean completed = findSubtreePointsWithinWindow(node.left, window,
+                sink, cellStarts, cellEnds);
+        cellEnds[dimension] = cellEnd;
+        if (!completed) {
+            return false;
+        }
+        int cellStart = cellStarts[dimension];
+        cellStarts[dimension] = node.splitValue;
+        completed = findSubtreePointsWithinWindow(node.right, window, sink,
+                cellStarts, cellEnds);
+        cellStarts[dimension] = cellStart;
+        return completed;
+    }
+
+    void findPoints(MultiDimensionalWindow window,
+                    List<MultiDimensionalPoint> points) {
+        findPoints(window, point -> points.add((MultiDimensionalPoint) point));
+    }
+
+    // Stream the points that lie within the window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findPoints(MultiDimensionalWindow window, PointSink sink) {
+        if (root == null) {
+            return true;
+        }
+        return findSubtreePointsWithinWindow(root, window, sink,
+                cellStarts.clone(), cellEnds.clone());
+    }
+
+    public static void main(String[] args) {
+        // Points in 3 dimensions, clustered around two centres.
+        Random random = new Random(0);
+        List<MultiDimensionalPoint> inputPoints = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int centre = i % 2 == 0 ? 10 : 1000;
+            inputPoints.add(new MultiDimensionalPoint(
+                    centre + random.nextInt(10), centre + random.nextInt(10),
+                    Utils.getRandomPositiveInteger(1000)));
+        }
+        MultiDimensionalWindow window = new MultiDimensionalWindow(
+                new int[]{0, 0, 0}, new int[]{15, 15, 500});
+        System.out.println("Window " + window);
+        for (SplitRule splitRule: SplitRule.values()) {
+            MultiDimensionalKDTree multiDimensionalKDTree =
+                    new MultiDimensionalKDTree(inputPoints, 3, splitRule);
+            List<MultiDimensionalPoint> pointsReturned = new ArrayList<>();
+            multiDimensionalKDTree.findPoints(window, pointsReturned);
+            System.out.println("Points returned with " + splitRule);
+            System.out.println(pointsReturned.size());
+            for (MultiDimensionalPoint point: pointsReturned) {
+                System.out.println(point);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.geometric.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import com.geometric.util.Geometric.*;
+
+// A window query over a subtree that runs in a fork/join pool.
+// a. The task walks its subtree as the sequential query does, collecting the
+// points into a buffer of its own.
+// b. A subtree with at least PARALLEL_QUERY_THRESHOLD points is forked as a
+// new task instead of being walked, and the task continues in a new buffer.
+// c. The result is the list of buffers of the task and its forked tasks, in
+// the order the sequential query would report their points. The buffers are
+// not copied, concatenate joins them into a single list when needed.
+@SuppressWarnings("serial")
+abstract class ParallelQueryTask extends RecursiveTask<List<List<Point>>> {
+    // Subtrees with fewer points than this are walked by the task that
+    // reaches them, as forking them costs more than it saves.
+    static final int PARALLEL_QUERY_THRESHOLD = 1 << 14;
+    // The buffer at index i holds the points reported before the forked task
+    // at index i, and the last buffer the points reported after all of them.
+    private final List<List<Point>> buffers = new ArrayList<>();
+    private final List<ParallelQueryTask> forkedTasks = new ArrayList<>();
+
+    // Walk the subtree, adding the points to the buffer and forking the
+    // large subtrees.
+    abstract void query();
+
+    List<Point> buffer() {
+        return buffers.getLast();
+    }
+
+    void fork(ParallelQueryTask task) {
+        task.fork();
+        forkedTasks.add(task);
+        buffers.add(new ArrayList<>());
+    }
+
+    @Override
+    protected List<List<Point>> compute() {
+        buffers.add(new ArrayList<>());
+        query();
+        List<List<Point>> result = new ArrayList<>();
+        for (int i = 0; i < buffers.size(); i++) {
+            if (!buffers.get(i).isEmpty()) {
+                result.add(buffers.get(i));
+            }
+            if (i < forkedTasks.size()) {
+                result.addAll(forkedTasks.get(i).join());
+            }
+        }
+        return result;
+    }
+
+    // Concatenate the buffers of a parallel query in order.
+    static List<Point> concatenate(List<List<Point>> buffers) {
+        int size = 0;
+        for (List<Point> buffer: buffers) {
+            size += buffer.size();
+        }
+        List<Point> points = new ArrayList<>(size);
+        for (List<Point> buffer: buffers) {
+            points.addAll(buffer);
+        }
+        return points;
+    }
+}
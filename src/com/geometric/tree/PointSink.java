@@ -0,0 +1,11 @@
+package com.geometric.tree;
+
+import com.geometric.util.Geometric.*;
+
+// Receives the points reported by a query as they are found, so that the
+// results need not be collected first.
+// Returning false from accept stops the query, e.g. once a limit is reached.
+@FunctionalInterface
+public interface PointSink {
+    boolean accept(Point point);
+}
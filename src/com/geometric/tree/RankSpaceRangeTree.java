@@ -0,0 +1,143 @@
+package com.geometric.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.geometric.util.Geometric.*;
+import com.geometric.util.PointBatch;
+import com.geometric.util.Utils;
+
+public class RankSpaceRangeTree {
+    // The two-dimensional range tree cannot have the same x or y coordinates
+    // for any 2 points. The rank space front end removes this restriction.
+    //
+    // Build
+    // =====
+    // a. The points are sorted by the composite keys (x, y, index) and
+    // (y, x, index). The position of a point in each order is its x and y
+    // rank, so no 2 points share a rank even when they share coordinates.
+    // b. The two-dimensional range tree is built over the points in rank
+    // space, which are dense integers between 0 and n-1.
+    //
+    // Query
+    // =====
+    // a. The window is translated to rank space with a binary search on the
+    // sorted coordinates, i.e. to the ranks of the first coordinate not less
+    // than the start and the last coordinate not greater than the end.
+    // b. The points found in rank space are mapped back to the input points
+    // through their x rank.
+    static TwoDimensionalRangeTree twoDimensionalRangeTree =
+            new TwoDimensionalRangeTree();
+    Point[] points;
+    // Sorted coordinates, i.e. the coordinate for every rank.
+    int[] sortedXs;
+    int[] sortedYs;
+    // The input point for every x rank.
+    int[] indexByXRank;
+    TwoDimensionalRangeTree.RangeNode root;
+
+    RankSpaceRangeTree(PointBatch batch) {
+        this(batch, batch.toPoints());
+    }
+
+    // The points found are reported as the given point objects, which must be
+    // in the same order as the batch.
+    RankSpaceRangeTree(List<Point> points) {
+        this(PointBatch.of(points), points.toArray(new Point[0]));
+    }
+
+    private RankSpaceRangeTree(PointBatch batch, Point[] points) {
+        int size = batch.size();
+        this.points = points;
+        indexByXRank = batch.sortedIndices(/*byX=*/true);
+        int[] indexByYRank = batch.sortedIndices(/*byX=*/false);
+        sortedXs = new int[size];
+        sortedYs = new int[size];
+        int[] rankX = new int[size];
+        int[] rankY = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            sortedXs[rank] = batch.getX(indexByXRank[rank]);
+            sortedYs[rank] = batch.getY(indexByYRank[rank]);
+            rankX[indexByXRank[rank]] = rank;
+            rankY[indexByYRank[rank]] = rank;
+        }
+        root = twoDimensionalRangeTree.build(new PointBatch(rankX, rankY));
+    }
+
+    // Index of the first coordinate greater than or equal to the value.
+    int lowerBound(int[] coordinates, int value) {
+        int low = 0;
+        int high = coordinates.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (coordinates[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Index of the first coordinate greater than the value.
+    int upperBound(int[] coordinates, int value) {
+        return value == Integer.MAX_VALUE ? coordinates.length :
+                lowerBound(coordinates, value + 1);
+    }
+
+    // Translate the window to rank space, or null if no rank is within it.
+    Window toRankWindow(Window window) {
+        int startX = lowerBound(sortedXs, window.getStartX());
+        int endX = upperBound(sortedXs, window.getEndX()) - 1;
+        int startY = lowerBound(sortedYs, window.getStartY());
+        int endY = upperBound(sortedYs, window.getEndY()) - 1;
+        if (startX > endX || startY > endY) {
+            return null;
+        }
+        return new Window(startX, startY, endX, endY);
+    }
+
+    void findPoints(Window window, List<Point> points) {
+        findPoints(window, points::add);
+    }
+
+    // Stream the points in the given window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findPoints(Window window, PointSink sink) {
+        Window rankWindow = toRankWindow(window);
+        if (rankWindow == null) {
+            return true;
+        }
+        return twoDimensionalRangeTree.findPoints(root, rankWindow,
+                point -> sink.accept(points[indexByXRank[point.getX()]]));
+    }
+
+    int count(Window window) {
+        Window rankWindow = toRankWindow(window);
+        if (rankWindow == null) {
+            return 0;
+        }
+        return twoDimensionalRangeTree.count(root, rankWindow);
+    }
+
+    public static void main(String[] args) {
+        // Unlike the two-dimensional range tree, the points are not required
+        // to have unique coordinates.
+        List<Point> inputPoints = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            inputPoints.add(new Point(Utils.getRandomPositiveInteger(10),
+                    Utils.getRandomPositiveInteger(10)));
+        }
+        System.out.println("Input points::");
+        Utils.print(inputPoints);
+
+        RankSpaceRangeTree rankSpaceRangeTree =
+                new RankSpaceRangeTree(PointBatch.of(inputPoints));
+        Window window = new Window(2, 2, 6, 8);
+        List<Point> pointsReturned = new ArrayList<>();
+        rankSpaceRangeTree.findPoints(window, pointsReturned);
+        System.out.println("Points returned");
+        Utils.print(pointsReturned);
+        System.out.println("Points counted");
+        System.out.println(rankSpaceRangeTree.count(window));
+    }
+}
@@ -2,12 +2,11 @@ package com.geometric.tree;
 
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import com.geometric.util.Geometric.*;
 import com.geometric.util.Utils;
 
@@ -21,9 +20,18 @@ public class SegmentTree {
     // ===============
     // a. Start with Elementary intervals built from an ordered set of segment
     // start and end points that correspond to the leaf nodes of the tree.
-    // b. Build the higher level nodes by merging pairs of lower level nodes
-    // and build the entire tree in bottom up manner. Every interval of an
-    // internal node corresponds to the merged intervals of its child nodes.
+    // b. Every internal node covers the merged intervals of its child nodes.
+    //
+    // The tree is implicit. The distinct end point X coordinates are kept in
+    // a sorted array, and the elementary intervals are numbered in order:
+    // a. The even interval 2i is the open interval before the point i, where
+    // the interval 2 * count is the one after the last point.
+    // b. The odd interval 2i + 1 is the closed interval of the point i.
+    // The nodes are numbered as in a heap. The root is node 1 and covers all
+    // the elementary intervals, and the children of node k are 2k and 2k + 1,
+    // which cover the halves of its intervals. The elementary interval of a
+    // query is found with a binary search on the X coordinates, and the
+    // query walks down to it with index arithmetic.
     //
     // Add Input Intervals
     // ===================
@@ -36,151 +44,179 @@ public class SegmentTree {
     // so repeat the process with the left node. Similarly check if the input
     // interval intersects the right child node's interval and if so repeat
     // the process with the right node.
+    // The intervals are added twice, first to count the segments of every
+    // node, and then to fill them into a single array, where the segments
+    // of every node are a contiguous slice.
+    //
+    // Build Canonical Sets
+    // ====================
+    // The segments must not cross each other, though they may share end
+    // points, as for the segments of a road map. Every segment associated
+    // with a node spans the whole interval of the node, i.e. its slab, so
+    // the segments of a node never change their vertical order within the
+    // slab. The canonical set of a node is the slice of its segments sorted
+    // bottom to top in the slab.
+    // The vertical segments are only associated with the elementary
+    // intervals of their X coordinate. A segment may end within a vertical
+    // segment, so they are kept apart in a slice of their own, sorted the
+    // same way, which follows the canonical set.
+    //
+    // Query
+    // =====
+    // At the X coordinate of the query line the heights of the segments in
+    // a canonical set are sorted, so a binary search finds the first segment
+    // that is not below the query line and the following segments are
+    // reported until one is above it. Only the segments crossing the line
+    // are reported, without testing them again.
     //
+    // The segments are numbered by their position in the input, and the
+    // canonical sets hold the numbers, which index the segment array.
+    Segment[] segments;
+    // The distinct end point X coordinates, sorted.
+    int[] xs;
+    int elementaryIntervalCount;
+    // The canonical set of node k is the slice of segmentIds from
+    // canonicalStarts[k] to verticalStarts[k], followed by its vertical
+    // segments up to canonicalStarts[k + 1].
+    int[] canonicalStarts;
+    int[] verticalStarts;
+    int[] segmentIds;
+    // The elementary intervals of the segments, and the write positions of
+    // the nodes. Only used while building.
+    int[] firstIntervals;
+    int[] lastIntervals;
+    int[] cursors;
+    int[] verticalCursors;
+
+    // Build the segment tree starting from elementary intervals.
+    SegmentTree(List<Segment> segments) {
+        buildBaseTree(segments);
+        for (int pass = 0; pass < 2; pass++) {
+            boolean fill = pass == 1;
+            if (fill) {
+                layoutCanonicalSets();
+            }
+            for (int i = 0; i < this.segments.length; i++) {
+                insertInterval(1, 0, elementaryIntervalCount - 1, i, fill);
+            }
+        }
+        buildCanonicalSets(1, 0, elementaryIntervalCount - 1);
+        releaseBuildState();
+    }
 
-    // We use a singleton dimensional range tree to address the queries.
-    static SingleDimensionalRangeTree singleDimensionalRangeTree =
-            new SingleDimensionalRangeTree();
-    static class SegmentNode {
-        Interval midInterval;
-        SingleDimensionalRangeTree.RangeNode canonicalSet;
-        Map<Point, Segment> pointToSegmentMap = new HashMap<>();
-        SegmentNode left;
-        SegmentNode right;
-        List<Segment> associatedSegments = new ArrayList<>();
-        SegmentNode(Interval midInterval) {
-            this.midInterval = midInterval;
+    // Build the segment tree on a fork/join pool with the given parallelism.
+    // The tree is identical to the one returned by the sequential build.
+    SegmentTree(List<Segment> segments, int parallelism) {
+        buildBaseTree(segments);
+        // Fork down to a depth with a few subtrees for every thread.
+        int depth = 32 - Integer.numberOfLeadingZeros(parallelism) + 2;
+        int[] ids = new int[this.segments.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
         }
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            forkJoinPool.invoke(new InsertTask(1, 0,
+                    elementaryIntervalCount - 1, ids, /*fill=*/false, depth));
+            layoutCanonicalSets();
+            forkJoinPool.invoke(new InsertTask(1, 0,
+                    elementaryIntervalCount - 1, ids, /*fill=*/true, depth));
+            forkJoinPool.invoke(new CanonicalSetTask(1, 0,
+                    elementaryIntervalCount - 1, depth));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+        releaseBuildState();
     }
 
-    // Add elementary intervals built from sorted set of the start points and
-    // end points of the segments.
-    // The list of elementary intervals are ::
+    // Compress the end point X coordinates, and find the elementary
+    // intervals of every segment.
+    // The elementary intervals are ::
     // a. An open interval between a point and its neighbor in the sorted list.
     // b. A closed interval containing each point.
     // c. An open interval between -infinity and the first point.
     // d. An open interval between the last point and +infinity.
-    List<SegmentNode> buildElementaryIntervals(List<Segment> segments) {
-        List<SegmentNode> nodeList = new ArrayList<>();
-        List<Integer> endpoints = new ArrayList<>();
-        for (Segment segment: segments) {
-            endpoints.add(segment.getXInterval().getStart());
-            endpoints.add(segment.getXInterval().getEnd());
-        }
-        Collections.sort(endpoints);
-        nodeList.add(new SegmentNode(new Interval(Integer.MIN_VALUE,
-                endpoints.getFirst(), /*closedStart=*/false, /*closedEnd
-                =*/false)));
-
-        for (int i = 0; i < endpoints.size() - 1; i++) {
-            // This is a closed interval.
-            nodeList.add(new SegmentNode(new Interval(endpoints.get(i),
-                    endpoints.get(i))));
-            // This is an open interval
-            nodeList.add(new SegmentNode(new Interval(endpoints.get(i),
-                    endpoints.get(i+1), /*closedStart=*/false, /*closedEnd
-                    =*/false)));
-        }
-        // This is a closed interval
-        nodeList.add(new SegmentNode(new Interval(endpoints.getLast(),
-                endpoints.getLast())));
-        // This is an open interval
-        nodeList.add(new SegmentNode(new Interval(endpoints.getLast(),
-                Integer.MAX_VALUE, /*closedStart=*/false, /*closedEnd
-                =*/false)));
-
-        return nodeList;
+    // An end point shared by segments is added once, so that every point
+    // is a single elementary interval.
+    void buildBaseTree(List<Segment> segments) {
+        this.segments = segments.toArray(new Segment[0]);
+        int[] endpoints = new int[2 * this.segments.length];
+        for (int i = 0; i < this.segments.length; i++) {
+            endpoints[2 * i] = getLeft(this.segments[i]).getX();
+            endpoints[2 * i + 1] = getRight(this.segments[i]).getX();
+        }
+        Arrays.sort(endpoints);
+        int count = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            if (i == 0 || endpoints[i] != endpoints[i - 1]) {
+                endpoints[count++] = endpoints[i];
+            }
+        }
+        xs = Arrays.copyOf(endpoints, count);
+        elementaryIntervalCount = 2 * count + 1;
+
+        firstIntervals = new int[this.segments.length];
+        lastIntervals = new int[this.segments.length];
+        for (int i = 0; i < this.segments.length; i++) {
+            firstIntervals[i] = 2 * Arrays.binarySearch(xs,
+                    getLeft(this.segments[i]).getX()) + 1;
+            lastIntervals[i] = 2 * Arrays.binarySearch(xs,
+                    getRight(this.segments[i]).getX()) + 1;
+        }
+        // The heap numbering of a tree over n leaves, split at the middle,
+        // stays below twice the power of two at or above n.
+        int nodeCount = 2 * Integer.highestOneBit(
+                2 * elementaryIntervalCount - 1);
+        cursors = new int[nodeCount];
+        verticalCursors = new int[nodeCount];
     }
 
-    // Assume left and right intervals are in order and are combinable according
-    // to open intervals and closed intervals semantics.
-    Interval combineNeighboringIntervals(Interval left, Interval right) {
-        return new Interval(left.getStart(), right.getEnd(),
-                left.getClosedStart(), right.getClosedEnd());
+    // The elementary interval containing the X coordinate.
+    int findElementaryInterval(int x) {
+        int index = Arrays.binarySearch(xs, x);
+        return index >= 0 ? 2 * index + 1 : 2 * (-index - 1);
     }
 
-    // Find the arbitrary segments that intersect the query line.
-    // a. Start with the X coordinate of the query line.
-    // b. If the canonical set of the node is not null, find in the
-    // single-dimensional range tree all the points within the window
-    // covering all the points within the Y range. The start or end points
-    // represent segments that will intersect the query line.
-    // c. Visit the subtree containing query line's X coordinate if any.
-    //
-    // Caveat::
-    // This implementation and much of the theory glosses over the fact that
-    // the one-dimensional range query is not sufficient to identify the
-    // arbitrary oriented segments intersecting the query line.
-    // To correctly do this we need to compute the intersection points for
-    // the segments with the query line.
-    // This means that part is no O (logn + k), k is count of added segments.
-    // Open Question:: Why theory glosses over this except for one paper.
-    void findSegments(SegmentNode node, QueryLine queryLine,
-                      List<Segment> segments) {
-        // Note we dont have a node null check as this is unexpected.
-        int queryX = queryLine.getX();
-        // A node may have no segments associated with it.
-        if (node.canonicalSet != null) {
-            // We actually need to test for the point of intersection of the
-            // segment with the queryLine and not the end points.
-            // It's interesting that the theory does not mention this fact.
-            Window window = new Window(Integer.MIN_VALUE, queryLine.getStartY(),
-                    Integer.MAX_VALUE, queryLine.getEndY());
-            List<Point> points = new ArrayList<>();
-            singleDimensionalRangeTree.findPoints(node.canonicalSet, window,
-                    points, /*orderByX=*/false);
-            Set<Segment> uniqueSegments = new HashSet<>();
-            for (Point point : points) {
-                uniqueSegments.add(node.pointToSegmentMap.get(point));
-            }
-            // We may need to filter the segments that really intersect the
-            // line. Is it possible due to the non-crossing nature of these
-            // segments, the time complexity still remains 0(logn + k).
-            segments.addAll(uniqueSegments);
-        }
-        if (node.left != null &&
-            node.left.midInterval.contains(new Interval(queryX, queryX))) {
-            findSegments(node.left, queryLine, segments);
-        } else if (node.right != null) {
-            // If we did not find queryX in the left subtree interval it
-            // should be in the right subtree interval.
-            findSegments(node.right, queryLine, segments);
+    // Lay out the slices of the nodes from the counts of their segments, and
+    // start the write positions of the nodes at their slices.
+    void layoutCanonicalSets() {
+        int nodeCount = cursors.length;
+        canonicalStarts = new int[nodeCount + 1];
+        verticalStarts = new int[nodeCount];
+        int position = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            canonicalStarts[node] = position;
+            verticalStarts[node] = position + cursors[node];
+            position += cursors[node] + verticalCursors[node];
+            cursors[node] = canonicalStarts[node];
+            verticalCursors[node] = verticalStarts[node];
         }
+        canonicalStarts[nodeCount] = position;
+        segmentIds = new int[position];
     }
 
-    // The canonical set of a node contains the segments start and end points
-    // of the associated segments for a node.
-    // Its purpose is for quick execution of the windowing query.
-    //
-    // NOTE:
-    // Here we are only querying with the vertical edge of the window with the
-    // expectation taht the logic could be extended to cover all window edges.
-    void buildCanonicalSet(SegmentNode node) {
-        if (node == null) {
-            return;
-        }
-        List<Point> points = new ArrayList<>();
-        for (Segment segment: node.associatedSegments) {
-            points.add(segment.getStart());
-            points.add(segment.getEnd());
-            node.pointToSegmentMap.put(segment.getStart(), segment);
-            node.pointToSegmentMap.put(segment.getEnd(), segment);
-        }
-        // The canonical set is built on the Y coordinates, so we can filter
-        // only the found intervals that intersect with the query line and have
-        // have Y coordinates within the query line's Y coordinate range.
-        // Note that this is the key differentiator from the interval tree, in
-        // which case the axis parallel-ness made this check unnecessary.
-        if (!points.isEmpty()) {
-            Collections.sort(points, Utils.getPointYComparator());
-            node.canonicalSet =
-                    singleDimensionalRangeTree.build(new ArrayList<>(points),
-                            /*orderByX=*/ false);
-        }
-        buildCanonicalSet(node.left);
-        buildCanonicalSet(node.right);
+    void releaseBuildState() {
+        firstIntervals = null;
+        lastIntervals = null;
+        cursors = null;
+        verticalCursors = null;
     }
 
+    // Count the segment for the node, or write it into the node's slice.
+    void addSegment(int node, int segmentId, boolean fill) {
+        boolean isVertical = isVertical(segments[segmentId]);
+        if (!fill) {
+            if (isVertical) {
+                verticalCursors[node]++;
+            } else {
+                cursors[node]++;
+            }
+        } else if (isVertical) {
+            segmentIds[verticalCursors[node]++] = segmentId;
+        } else {
+            segmentIds[cursors[node]++] = segmentId;
+        }
+    }
 
     // Repeated for easier correlation with the implementation.
     // For each interval do the following::
@@ -192,99 +228,350 @@ public class SegmentTree {
     // so repeat the process with the left node. Similarly check if the input
     // interval intersects the right child node's interval and if so repeat
     // the process with the right node.
-    void insertInterval(SegmentNode node, Segment segment) {
-        // If the segment's interval contains the entire Interval of the node,
-        // it will be associated with that node.
-        // We return when the highest node is associated.
-        Interval interval = segment.getXInterval();
-        if (interval.contains(node.midInterval)) {
-            node.associatedSegments.add(segment);
+    // The node covers the elementary intervals from first to last.
+    void insertInterval(int node, int first, int last, int segmentId,
+                        boolean fill) {
+        if (firstIntervals[segmentId] <= first &&
+                last <= lastIntervals[segmentId]) {
+            addSegment(node, segmentId, fill);
             return;
         }
-        // Every non leaf node must have a left child but not necessarily a
-        // right child.
-        if (interval.intersects(node.left.midInterval)) {
-            insertInterval(node.left, segment);
+        int mid = (first + last) >>> 1;
+        if (firstIntervals[segmentId] <= mid) {
+            insertInterval(2 * node, first, mid, segmentId, fill);
         }
-        if (node.right == null) {
-            return;
+        if (lastIntervals[segmentId] > mid) {
+            insertInterval(2 * node + 1, mid + 1, last, segmentId, fill);
+        }
+    }
+
+    // Inserts the segments into a subtree in the fork/join pool.
+    // Instead of inserting the segments one at a time, the segments that
+    // reach a node are distributed to its children in bulk, and the children
+    // are forked. Below the parallel depth the segments are inserted into
+    // the subtree one at a time. As the segments keep their order, and the
+    // nodes of a subtree are only written by its task, the segments of every
+    // node are the same as for the sequential build.
+    @SuppressWarnings("serial")
+    class InsertTask extends RecursiveAction {
+        int node;
+        int first;
+        int last;
+        int[] segmentIds;
+        boolean fill;
+        int depth;
+        InsertTask(int node, int first, int last, int[] segmentIds,
+                   boolean fill, int depth) {
+            this.node = node;
+            this.first = first;
+            this.last = last;
+            this.segmentIds = segmentIds;
+            this.fill = fill;
+            this.depth = depth;
         }
-        if (interval.intersects(node.right.midInterval)) {
-            insertInterval(node.right, segment);
+
+        @Override
+        protected void compute() {
+            if (segmentIds.length == 0) {
+                return;
+            } else if (depth == 0 || first == last) {
+                for (int segmentId: segmentIds) {
+                    insertInterval(node, first, last, segmentId, fill);
+                }
+                return;
+            }
+            int mid = (first + last) >>> 1;
+            int[] leftSegmentIds = new int[segmentIds.length];
+            int[] rightSegmentIds = new int[segmentIds.length];
+            int leftCount = 0;
+            int rightCount = 0;
+            for (int segmentId: segmentIds) {
+                if (firstIntervals[segmentId] <= first &&
+                        last <= lastIntervals[segmentId]) {
+                    addSegment(node, segmentId, fill);
+                    continue;
+                }
+                if (firstIntervals[segmentId] <= mid) {
+                    leftSegmentIds[leftCount++] = segmentId;
+                }
+                if (lastIntervals[segmentId] > mid) {
+                    rightSegmentIds[rightCount++] = segmentId;
+                }
+            }
+            InsertTask leftTask = new InsertTask(2 * node, first, mid,
+                    Arrays.copyOf(leftSegmentIds, leftCount), fill, depth - 1);
+            leftTask.fork();
+            new InsertTask(2 * node + 1, mid + 1, last,
+                    Arrays.copyOf(rightSegmentIds, rightCount), fill,
+                    depth - 1).compute();
+            leftTask.join();
         }
     }
 
-    // Build the segment tree starting from elementary intervals.
-    SegmentNode build(List<Segment> segments) {
-        List<SegmentNode> nodeList = buildElementaryIntervals(segments);
-        if (nodeList.isEmpty()) {
-            return null;
-        }
-
-        // Build the segment tree in bottom up order for each level.
-        // Address the special handling of the single child usecase.
-        while (nodeList.size() > 1) {
-            List<SegmentNode> parentNodeList = new ArrayList<>();
-            // Address all but the last single child if any.
-            for (int i = 0; i < nodeList.size()/2; i++) {
-                SegmentNode leftChild = nodeList.get(2*i);
-                SegmentNode rightChild = nodeList.get(2*i+1);
-                SegmentNode parent =
-                        new SegmentNode(combineNeighboringIntervals(
-                                leftChild.midInterval, rightChild.midInterval));
-                parent.left = leftChild;
-                parent.right = rightChild;
-                parentNodeList.add(parent);
+    // Compare the segment with the height y on the vertical line at x, which
+    // is within the X interval of the segment. Returns a negative value if
+    // the segment is below the height, a positive value if it is above, and
+    // 0 if it passes through it. A vertical segment passes through all the
+    // heights between its end points.
+    static int compareToHeight(int startX, int startY, int endX, int endY,
+                               int x, int y) {
+        if (startX == endX) {
+            if (Math.max(startY, endY) < y) {
+                return -1;
+            } else if (Math.min(startY, endY) > y) {
+                return 1;
             }
-            // For single child parent.
-            if (nodeList.size() % 2 != 0) {
-                SegmentNode lastChild = nodeList.getLast();
-                SegmentNode parent = new SegmentNode(lastChild.midInterval);
-                parent.left = lastChild;
-                parentNodeList.add(parent);
+            return 0;
+        } else if (startX > endX) {
+            return compareToHeight(endX, endY, startX, startY, x, y);
+        }
+        // The height of the segment at x minus y, scaled by its width.
+        return Utils.signOfSum((long) startY - y, (long) endX - startX,
+                (long) endY - startY, (long) x - startX);
+    }
+
+    static int compareToHeight(Segment segment, int x, int y) {
+        return compareToHeight(segment.getStart().getX(),
+                segment.getStart().getY(), segment.getEnd().getX(),
+                segment.getEnd().getY(), x, y);
+    }
+
+    static Point getLeft(Segment segment) {
+        return segment.getStart().getX() <= segment.getEnd().getX() ?
+                segment.getStart() : segment.getEnd();
+    }
+
+    static Point getRight(Segment segment) {
+        return segment.getStart().getX() <= segment.getEnd().getX() ?
+                segment.getEnd() : segment.getStart();
+    }
+
+    // The side of the point relative to the line through the segment.
+    // Positive if the point is above the line, negative if it is below.
+    static int orientation(Segment segment, Point point) {
+        Point left = getLeft(segment);
+        Point right = getRight(segment);
+        return Utils.signOfSum((long) right.getX() - left.getX(),
+                (long) point.getY() - left.getY(),
+                (long) left.getY() - right.getY(),
+                (long) point.getX() - left.getX());
+    }
+
+    // Compare two non-crossing segments that both span an interval wider
+    // than a point, by their order within it.
+    // a. If the left end point of the second segment is within the X
+    // interval of the first one, the second segment is on the side of the
+    // first one that its left end point is on. If the end point is on the
+    // first segment, it is on the side its right end point is on.
+    // b. Otherwise the left end point of the first segment is within the X
+    // interval of the second one, and the same holds the other way around.
+    static int compareInSlab(Segment segment1, Segment segment2) {
+        int x = getLeft(segment2).getX();
+        if (getLeft(segment1).getX() <= x && x <= getRight(segment1).getX()) {
+            int side = orientation(segment1, getLeft(segment2));
+            if (side == 0) {
+                side = orientation(segment1, getRight(segment2));
             }
-            nodeList = parentNodeList;
+            return -side;
+        }
+        int side = orientation(segment2, getLeft(segment1));
+        if (side == 0) {
+            side = orientation(segment2, getRight(segment1));
         }
+        return side;
+    }
 
-        SegmentNode root = nodeList.getFirst();
-        // Insert the X intervals of the segments into the canonical sets which
-        // are one-dimensional Range trees on the Y coordinate.
-        for (Segment segment: segments) {
-            insertInterval(root, segment);
+    // Compare two non-crossing segments that both cross the vertical line at
+    // x, and are not vertical, by their height on the line.
+    // Segments that touch on the line meet at an end point of one of them,
+    // so the heights are compared with the integer Y coordinate of that end
+    // point. Segments that do not have an end point on the line do not
+    // touch on it, and keep their order within the interval around it.
+    static int compareAtX(Segment segment1, Segment segment2, int x) {
+        for (Point point: new Point[]{segment1.getStart(), segment1.getEnd()}) {
+            if (point.getX() == x) {
+                return -compareToHeight(segment2, x, point.getY());
+            }
+        }
+        for (Point point: new Point[]{segment2.getStart(), segment2.getEnd()}) {
+            if (point.getX() == x) {
+                return compareToHeight(segment1, x, point.getY());
+            }
+        }
+        return compareInSlab(segment1, segment2);
+    }
+
+    static boolean isVertical(Segment segment) {
+        return segment.getStart().getX() == segment.getEnd().getX();
+    }
+
+    static int lowestY(Segment segment) {
+        return Math.min(segment.getStart().getY(), segment.getEnd().getY());
+    }
+
+    // Find the segments that intersect the query line.
+    // a. Find the elementary interval of the X coordinate of the query line.
+    // b. Starting from the root, binary search the canonical set of the node
+    // for the first segment that is not below the query line at its X
+    // coordinate, and report the segments from there until one is above the
+    // query line.
+    // c. Visit the child covering the elementary interval if any.
+    //
+    // Every segment is associated with at most one node on the path, and
+    // the segments reported are exactly those intersecting the query line.
+    // Time Complexity = O(log^2n + k)
+    void findSegments(QueryLine queryLine, List<Segment> segments) {
+        findSegments(queryLine, segments::add);
+    }
+
+    // Stream the segments found for the query line to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findSegments(QueryLine queryLine, SegmentSink sink) {
+        int elementaryInterval = findElementaryInterval(queryLine.getX());
+        int node = 1;
+        int first = 0;
+        int last = elementaryIntervalCount - 1;
+        while (true) {
+            // A node may have no segments associated with it.
+            if (!findSegments(canonicalStarts[node], verticalStarts[node],
+                    queryLine, sink) ||
+                    !findSegments(verticalStarts[node],
+                            canonicalStarts[node + 1], queryLine, sink)) {
+                return false;
+            } else if (first == last) {
+                return true;
+            }
+            int mid = (first + last) >>> 1;
+            if (elementaryInterval <= mid) {
+                node = 2 * node;
+                last = mid;
+            } else {
+                node = 2 * node + 1;
+                first = mid + 1;
+            }
+        }
+    }
+
+    // Report the segments of the slice of a canonical set that cross the
+    // query line.
+    // Returns false if the sink stopped the query.
+    boolean findSegments(int from, int to, QueryLine queryLine,
+                         SegmentSink sink) {
+        int queryX = queryLine.getX();
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareToHeight(segments[segmentIds[mid]], queryX,
+                    queryLine.getStartY()) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < to; i++) {
+            Segment segment = segments[segmentIds[i]];
+            if (compareToHeight(segment, queryX, queryLine.getEndY()) > 0) {
+                break;
+            }
+            if (!sink.accept(segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Sort the canonical sets of the subtree, whose node covers the
+    // elementary intervals from first to last.
+    void buildCanonicalSets(int node, int first, int last) {
+        buildCanonicalSet(node, first, last);
+        if (first == last) {
+            return;
+        }
+        int mid = (first + last) >>> 1;
+        buildCanonicalSets(2 * node, first, mid);
+        buildCanonicalSets(2 * node + 1, mid + 1, last);
+    }
+
+    // Sort the canonical set of the node alone, by the order of its
+    // segments within its interval.
+    void buildCanonicalSet(int node, int first, int last) {
+        Comparator<Segment> comparator;
+        if (first == last && first % 2 == 1) {
+            int x = xs[first / 2];
+            comparator = (segment1, segment2) ->
+                    compareAtX(segment1, segment2, x);
+        } else {
+            comparator = SegmentTree::compareInSlab;
+        }
+        sortSegmentIds(canonicalStarts[node], verticalStarts[node],
+                comparator);
+        // The vertical segments on a line do not overlap.
+        sortSegmentIds(verticalStarts[node], canonicalStarts[node + 1],
+                Comparator.comparingInt(SegmentTree::lowestY));
+    }
+
+    void sortSegmentIds(int from, int to, Comparator<Segment> comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        Integer[] ids = new Integer[to - from];
+        for (int i = from; i < to; i++) {
+            ids[i - from] = segmentIds[i];
+        }
+        Arrays.sort(ids, (id1, id2) ->
+                comparator.compare(segments[id1], segments[id2]));
+        for (int i = from; i < to; i++) {
+            segmentIds[i] = ids[i - from];
+        }
+    }
+
+    // Builds the canonical sets of a subtree in the fork/join pool. The
+    // tree is balanced, so forking the subtrees down to the parallel depth
+    // splits the work evenly.
+    @SuppressWarnings("serial")
+    class CanonicalSetTask extends RecursiveAction {
+        int node;
+        int first;
+        int last;
+        int depth;
+        CanonicalSetTask(int node, int first, int last, int depth) {
+            this.node = node;
+            this.first = first;
+            this.last = last;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (depth == 0 || first == last) {
+                buildCanonicalSets(node, first, last);
+                return;
+            }
+            int mid = (first + last) >>> 1;
+            CanonicalSetTask leftTask = new CanonicalSetTask(2 * node, first,
+                    mid, depth - 1);
+            leftTask.fork();
+            buildCanonicalSet(node, first, last);
+            new CanonicalSetTask(2 * node + 1, mid + 1, last,
+                    depth - 1).compute();
+            leftTask.join();
         }
-        // The canonical set will allow optimal windowing searches.
-        buildCanonicalSet(root);
-        return root;
     }
 
     public static void main(String[] args) {
-        SegmentTree segmentTree = new SegmentTree();
         List<Segment> segments = new ArrayList<>();
-        Set<Integer> seenX = new HashSet<>();
-        Set<Integer> seenY = new HashSet<>();
-        do {
+        // The segments are drawn within disjoint horizontal bands, so they do
+        // not cross.
+        for (int i = 0; i < 10; i++) {
             int startX = Utils.getRandomPositiveInteger(40);
-            int startY = Utils.getRandomPositiveInteger(40);
             int endX = startX + Utils.getRandomPositiveInteger(20);
-            int endY = startY + Utils.getRandomPositiveInteger(20);
-            // The single dimensional range tree does not allow for y
-            // coordinates to match, so adjust it to avoid the scenario.
-            if (endY == startY) {
-                endY++;
-            }
-            if (seenX.contains(startX) || seenY.contains(startY) ||
-                    seenX.contains(endX) || seenY.contains(endY)) {
-                continue;
-            }
-            seenX.add(startX);
-            seenY.add(startY);
-            seenX.add(endX);
-            seenY.add(endY);
-            Segment segment = new Segment(startX, startY, endX, endY);
-            segments.add(segment);
-        } while (segments.size() < 10);
-
-        SegmentNode root = segmentTree.build(segments);
+            int startY = 4 * i + Utils.getRandomPositiveInteger(3);
+            int endY = 4 * i + Utils.getRandomPositiveInteger(3);
+            segments.add(new Segment(startX, startY, endX, endY));
+        }
+
+        SegmentTree segmentTree = new SegmentTree(segments);
         System.out.println("Input segments:");
         for (Segment segment: segments) {
             System.out.println(segment);
@@ -294,10 +581,20 @@ public class SegmentTree {
         System.out.println("Query Line::");
         System.out.println(queryLine);
         List<Segment> outputSegments = new ArrayList<>();
-        segmentTree.findSegments(root, queryLine, outputSegments);
+        segmentTree.findSegments(queryLine, outputSegments);
         System.out.println("Output segments:");
         for (Segment segment: outputSegments) {
             System.out.println(segment);
         }
+
+        // The parallel build returns the same tree.
+        SegmentTree parallelSegmentTree = new SegmentTree(segments,
+                /*parallelism=*/2);
+        List<Segment> parallelOutputSegments = new ArrayList<>();
+        parallelSegmentTree.findSegments(queryLine, parallelOutputSegments);
+        System.out.println("Output segments with parallel build:");
+        for (Segment segment: parallelOutputSegments) {
+            System.out.println(segment);
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.geometric.tree;
 
 import java.util.*;
 import com.geometric.util.Geometric.*;
+import com.geometric.util.PointBatch;
 import com.geometric.util.Utils;
 
 public class SingleDimensionalRangeTree {
@@ -10,10 +11,20 @@ public class SingleDimensionalRangeTree {
     // x or y coordinates.
     static class RangeNode {
         Point point;
+        // Number of leaves in the subtree, used to answer count queries
+        // without visiting the leaves.
+        int size = 1;
+        // Aggregate of the weights of the weighted leaves in the subtree, or
+        // null if there are none.
+        Aggregate aggregate;
         RangeNode left;
         RangeNode right;
         RangeNode(Point point) {
             this.point = point;
+            if (point instanceof WeightedPoint weightedPoint) {
+                aggregate = new Aggregate();
+                aggregate.add(weightedPoint.getWeight());
+            }
         }
         boolean isLeaf() {
             return left == null && right == null;
@@ -21,40 +32,42 @@ public class SingleDimensionalRangeTree {
     }
 
     // We add points corresponding to the leaf nodes in order.
-    void addLeafsInorder(RangeNode node, List<Point> points) {
+    // Returns false if the sink stopped the traversal.
+    boolean addLeafsInorder(RangeNode node, PointSink sink) {
         if (node == null) {
-            return;
-        }
-        addLeafsInorder(node.left, points);
-        if (node.isLeaf()) {
-            points.add(node.point);
+            return true;
+        } else if (node.isLeaf()) {
+            return sink.accept(node.point);
         }
-        addLeafsInorder(node.right, points);
+        return addLeafsInorder(node.left, sink) &&
+                addLeafsInorder(node.right, sink);
     }
 
     // Accumulate the subtree points within the Window as we traverse through
     // the range tree.
+    // Returns false if the sink stopped the traversal.
     // Time complexity = On
-    private void getSubtreePointsInWindow(RangeNode node, Window window,
-                                      List<Point> points, boolean checkForX,
-                                      boolean isLeftSubtree) {
+    private boolean getSubtreePointsInWindow(RangeNode node, Window window,
+                                             PointSink sink, boolean checkForX,
+                                             boolean isLeftSubtree) {
         if (node == null) {
-            return;
+            return true;
         } else if (node.isLeaf()) {
             if (window.isPointInWindow(node.point)) {
-                points.add(node.point);
+                return sink.accept(node.point);
             }
+            return true;
         }
         if (isLeftSubtree) {
             // In left subtree of split node the x coordinate will be less
             // than or equal to window's endX, so we check the start coordinate.
             if ((checkForX && node.point.getX() >= window.getStartX()) ||
                     (!checkForX && node.point.getY() >= window.getStartY())) {
-                getSubtreePointsInWindow(node.left, window, points,
-                        checkForX, isLeftSubtree);
-                addLeafsInorder(node.right, points);
+                return getSubtreePointsInWindow(node.left, window, sink,
+                        checkForX, isLeftSubtree) &&
+                        addLeafsInorder(node.right, sink);
             } else {
-                getSubtreePointsInWindow(node.right, window, points,
+                return getSubtreePointsInWindow(node.right, window, sink,
                         checkForX, isLeftSubtree);
             }
         } else {
@@ -62,11 +75,11 @@ public class SingleDimensionalRangeTree {
             // than or equal to window's startX, so we check the end coordinate.
             if ((checkForX && node.point.getX() <= window.getEndX()) ||
                     (!checkForX && node.point.getY() <= window.getEndY())) {
-                addLeafsInorder(node.left, points);
-                getSubtreePointsInWindow(node.right, window, points,
-                        checkForX, isLeftSubtree);
+                return addLeafsInorder(node.left, sink) &&
+                        getSubtreePointsInWindow(node.right, window, sink,
+                                checkForX, isLeftSubtree);
             } else {
-                getSubtreePointsInWindow(node.left, window, points,
+                return getSubtreePointsInWindow(node.left, window, sink,
                         checkForX, isLeftSubtree);
             }
         }
@@ -98,19 +111,140 @@ public class SingleDimensionalRangeTree {
     // node that are within the window.
     void findPoints(RangeNode node, Window window, List<Point> points,
                     boolean orderByX) {
+        findPoints(node, window, points::add, orderByX);
+    }
+
+    // Stream the points in the given window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findPoints(RangeNode node, Window window, PointSink sink,
+                       boolean orderByX) {
+        RangeNode splitNode = findSplitNode(node, window, orderByX);
+        if (splitNode == null) {
+            return true;
+        } else if (splitNode.isLeaf()) {
+            if (window.isPointInWindow(splitNode.point)) {
+                return sink.accept(splitNode.point);
+            }
+            return true;
+        }
+        return getSubtreePointsInWindow(splitNode.left, window, sink,
+                orderByX, /*isLeftSubtree*/true) &&
+                getSubtreePointsInWindow(splitNode.right, window, sink,
+                        orderByX, /*isLeftSubtree*/false);
+    }
+
+    int size(RangeNode node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Count the subtree points within the Window as we traverse through the
+    // range tree. This follows getSubtreePointsInWindow, but a subtree that is
+    // entirely within the window contributes its size instead of its leaves.
+    // Time complexity = O(logn)
+    private int countSubtreePointsInWindow(RangeNode node, Window window,
+                                           boolean checkForX,
+                                           boolean isLeftSubtree) {
+        if (node == null) {
+            return 0;
+        } else if (node.isLeaf()) {
+            return window.isPointInWindow(node.point) ? 1 : 0;
+        }
+        if (isLeftSubtree) {
+            if ((checkForX && node.point.getX() >= window.getStartX()) ||
+                    (!checkForX && node.point.getY() >= window.getStartY())) {
+                return countSubtreePointsInWindow(node.left, window,
+                        checkForX, isLeftSubtree) + size(node.right);
+            } else {
+                return countSubtreePointsInWindow(node.right, window,
+                        checkForX, isLeftSubtree);
+            }
+        } else {
+            if ((checkForX && node.point.getX() <= window.getEndX()) ||
+                    (!checkForX && node.point.getY() <= window.getEndY())) {
+                return size(node.left) + countSubtreePointsInWindow(
+                        node.right, window, checkForX, isLeftSubtree);
+            } else {
+                return countSubtreePointsInWindow(node.left, window,
+                        checkForX, isLeftSubtree);
+            }
+        }
+    }
+
+    // Count the points in the given window without reporting them.
+    // The split node is found as in findPoints and the subtree sizes stored
+    // in the nodes replace the leaf walks.
+    int count(RangeNode node, Window window, boolean orderByX) {
+        RangeNode splitNode = findSplitNode(node, window, orderByX);
+        if (splitNode == null) {
+            return 0;
+        } else if (splitNode.isLeaf()) {
+            return window.isPointInWindow(splitNode.point) ? 1 : 0;
+        }
+        return countSubtreePointsInWindow(splitNode.left, window, orderByX,
+                /*isLeftSubtree*/true) +
+                countSubtreePointsInWindow(splitNode.right, window, orderByX,
+                        /*isLeftSubtree*/false);
+    }
+
+    Aggregate aggregate(RangeNode node) {
+        return node == null ? null : node.aggregate;
+    }
+
+    // Aggregate the weights of the subtree points within the Window, the same
+    // way countSubtreePointsInWindow counts them.
+    private void aggregateSubtreePointsInWindow(RangeNode node, Window window,
+                                                boolean checkForX,
+                                                boolean isLeftSubtree,
+                                                Aggregate result) {
+        if (node == null) {
+            return;
+        } else if (node.isLeaf()) {
+            if (window.isPointInWindow(node.point)) {
+                result.add(node.aggregate);
+            }
+            return;
+        }
+        if (isLeftSubtree) {
+            if ((checkForX && node.point.getX() >= window.getStartX()) ||
+                    (!checkForX && node.point.getY() >= window.getStartY())) {
+                aggregateSubtreePointsInWindow(node.left, window, checkForX,
+                        isLeftSubtree, result);
+                result.add(aggregate(node.right));
+            } else {
+                aggregateSubtreePointsInWindow(node.right, window, checkForX,
+                        isLeftSubtree, result);
+            }
+        } else {
+            if ((checkForX && node.point.getX() <= window.getEndX()) ||
+                    (!checkForX && node.point.getY() <= window.getEndY())) {
+                result.add(aggregate(node.left));
+                aggregateSubtreePointsInWindow(node.right, window, checkForX,
+                        isLeftSubtree, result);
+            } else {
+                aggregateSubtreePointsInWindow(node.left, window, checkForX,
+                        isLeftSubtree, result);
+            }
+        }
+    }
+
+    // Aggregate the weights of the weighted points in the given window into
+    // the result. Points without a weight are not aggregated.
+    // Time complexity = O(logn)
+    void aggregate(RangeNode node, Window window, boolean orderByX,
+                   Aggregate result) {
         RangeNode splitNode = findSplitNode(node, window, orderByX);
         if (splitNode == null) {
             return;
         } else if (splitNode.isLeaf()) {
             if (window.isPointInWindow(splitNode.point)) {
-                points.add(splitNode.point);
+                result.add(splitNode.aggregate);
             }
             return;
         }
-        getSubtreePointsInWindow(splitNode.left, window, points, orderByX,
-                /*isLeftSubtree*/true);
-        getSubtreePointsInWindow(splitNode.right, window, points, orderByX,
-                /*isLeftSubtree*/false);
+        aggregateSubtreePointsInWindow(splitNode.left, window, orderByX,
+                /*isLeftSubtree*/true, result);
+        aggregateSubtreePointsInWindow(splitNode.right, window, orderByX,
+                /*isLeftSubtree*/false, result);
     }
 
     // Build a range tree from the given list of points and the relevant
@@ -133,6 +267,43 @@ public class SingleDimensionalRangeTree {
         }
         node.left = build(points.subList(0, i), orderByX);
         node.right = build(points.subList(i, points.size()), orderByX);
+        node.size = size(node.left) + size(node.right);
+        node.aggregate = Aggregate.combine(aggregate(node.left),
+                aggregate(node.right));
+        return node;
+    }
+
+    // Build a range tree from a columnar batch of points and the relevant
+    // coordinate dimension.
+    RangeNode build(PointBatch batch, boolean orderByX) {
+        return build(batch, batch.toPoints(), batch.sortedIndices(orderByX),
+                0, batch.size(), orderByX);
+    }
+
+    // Build a range tree from a slice of batch indices sorted by the relevant
+    // coordinate. The leaves hold the given points of the batch.
+    RangeNode build(PointBatch batch, Point[] points, int[] indices, int from,
+                    int to, boolean orderByX) {
+        if (from == to) {
+            return null;
+        } else if (to - from == 1) {
+            return new RangeNode(points[indices[from]]);
+        }
+        int medianX = batch.median(indices, from, to, /*forXCoordinate=*/true);
+        int medianY = batch.median(indices, from, to, /*forXCoordinate=*/false);
+        RangeNode node = new RangeNode(new Point(medianX, medianY));
+        int median = orderByX ? medianX : medianY;
+        int i;
+        for (i = from; i < to; i++) {
+            if (batch.getCoordinate(indices[i], orderByX) > median) {
+                break;
+            }
+        }
+        node.left = build(batch, points, indices, from, i, orderByX);
+        node.right = build(batch, points, indices, i, to, orderByX);
+        node.size = size(node.left) + size(node.right);
+        node.aggregate = Aggregate.combine(aggregate(node.left),
+                aggregate(node.right));
         return node;
     }
 
@@ -156,5 +327,8 @@ public class SingleDimensionalRangeTree {
                 /*orderByX=*/true);
         System.out.println("Points returned");
         Utils.print(pointsReturned);
+        System.out.println("Points counted");
+        System.out.println(singleDimensionalRangeTree.count(root, window,
+                /*orderByX=*/true));
     }
 }
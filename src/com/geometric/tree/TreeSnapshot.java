@@ -0,0 +1,809 @@
+package com.geometric.tree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import com.geometric.util.Geometric.*;
+import com.geometric.util.Utils;
+
+public class TreeSnapshot {
+    // A versioned binary snapshot format for the trees, so that an index can
+    // be saved once and then opened with FileChannel.map on startup instead of
+    // being rebuilt.
+    //
+    // Format
+    // ======
+    // The file is a header followed by records of 4 byte integers. Records
+    // refer to each other by their byte offset in the file, and -1 stands for
+    // a missing child. Records are written in post order, so the children of
+    // a node are written before the node.
+    //
+    // a. Header: magic, version, structure type, root offset and the offset
+    // of the segment table (-1 for the point structures).
+    // b. Entry array: count, then (x, y, payload) for every entry. These hold
+    // the canonical sets of the range trees, sorted by y the same way as the
+    // single dimensional range trees, so a canonical set query is a binary
+    // search and a scan.
+    // c. Range node: x, y, left, right, canonical set entry array.
+    // d. KD node: x, y, left, right.
+    // e. Segment table: count, then (startX, startY, endX, endY) for every
+    // segment. The payload of an entry in the interval tree and segment tree
+    // refers to a segment by its index in this table.
+    // f. Interval node: mid, start points range tree, end points range tree,
+    // left, right.
+    // g. Int array: count, then the values.
+    // h. Segment tree: elementary interval count, then the int arrays of the
+    // X coordinates, canonical starts, vertical starts and segment ids of the
+    // array backed segment tree, which are queried in place.
+    //
+    // Query
+    // =====
+    // The mapped structures run the same queries as the trees directly on the
+    // mapped buffer, so pages are only read as the queries touch them.
+    // Points and segments are only created when they are reported.
+    //
+    // NOTE:
+    // A mapped buffer is indexed by an int, so a snapshot is limited to 2GB,
+    // and save throws an IOException for a tree that does not fit.
+    static final int MAGIC = 0x47454f53;
+    static final int VERSION = 4;
+    static final int HEADER_SIZE = 20;
+    static final int RANGE_TREE = 1;
+    static final int KD_TREE = 2;
+    static final int INTERVAL_TREE = 3;
+    static final int SEGMENT_TREE = 4;
+    static final int NONE = -1;
+
+    // Writes the records after the header and tracks their offsets. The header
+    // is written last, once the root offset is known.
+    static class Writer implements AutoCloseable {
+        FileChannel channel;
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        int position = HEADER_SIZE;
+
+        Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE);
+        }
+
+        void writeInt(int value) throws IOException {
+            if (position > Integer.MAX_VALUE - Integer.BYTES) {
+                throw new IOException("Snapshot exceeds " +
+                        Integer.MAX_VALUE + " bytes");
+            } else if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void writeHeader(int type, int root, int segments) throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(type).putInt(root)
+                    .putInt(segments).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Write the given points in order with their payloads.
+    static int writeEntries(Writer writer, List<Point> points,
+                            int[] payloads) throws IOException {
+        int offset = writer.position;
+        writer.writeInt(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            writer.writeInt(points.get(i).getX());
+            writer.writeInt(points.get(i).getY());
+            writer.writeInt(payloads[i]);
+        }
+        return offset;
+    }
+
+    // Write the leaves of a canonical set. The payload of a point is the
+    // index it carries, i.e. the segment id of a segment endpoint.
+    static int writeCanonicalSet(Writer writer,
+                                 FlatSingleDimensionalRangeTree canonicalSet)
+            throws IOException {
+        List<Point> points = Arrays.asList(canonicalSet.points);
+        int[] payloads = new int[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            payloads[i] = points.get(i) instanceof IndexedPoint indexedPoint ?
+                    indexedPoint.getIndex() : NONE;
+        }
+        return writeEntries(writer, points, payloads);
+    }
+
+    static int writeRangeTree(Writer writer,
+                              TwoDimensionalRangeTree.RangeNode node)
+            throws IOException {
+        if (node == null) {
+            return NONE;
+        }
+        int left = writeRangeTree(writer, node.left);
+        int right = writeRangeTree(writer, node.right);
+        int canonicalSet = writeCanonicalSet(writer, node.canonicalSet);
+        int offset = writer.position;
+        writer.writeInt(node.point.getX());
+        writer.writeInt(node.point.getY());
+        writer.writeInt(left);
+        writer.writeInt(right);
+        writer.writeInt(canonicalSet);
+        return offset;
+    }
+
+    static int writeKDTree(Writer writer, TwoDimensionalKDTree.KDNode node)
+            throws IOException {
+        if (node == null) {
+            return NONE;
+        }
+        int left = writeKDTree(writer, node.left);
+        int right = writeKDTree(writer, node.right);
+        int offset = writer.position;
+        writer.writeInt(node.point.getX());
+        writer.writeInt(node.point.getY());
+        writer.writeInt(left);
+        writer.writeInt(right);
+        return offset;
+    }
+
+    // The segment table is the segment array shared by the nodes of the
+    // tree, so the segment ids carried by the points are kept.
+    static int writeSegments(Writer writer, Segment[] segments)
+            throws IOException {
+        int offset = writer.position;
+        writer.writeInt(segments.length);
+        for (Segment segment: segments) {
+            writer.writeInt(segment.getStart().getX());
+            writer.writeInt(segment.getStart().getY());
+            writer.writeInt(segment.getEnd().getX());
+            writer.writeInt(segment.getEnd().getY());
+        }
+        return offset;
+    }
+
+    static int writeIntervalTree(Writer writer, IntervalTree.IntervalNode node)
+            throws IOException {
+        if (node == null) {
+            return NONE;
+        }
+        int left = writeIntervalTree(writer, node.left);
+        int right = writeIntervalTree(writer, node.right);
+        int startPoints = writeRangeTree(writer,
+                node.intersectingSegmentsStartPoints);
+        int endPoints = writeRangeTree(writer,
+                node.intersectingSegmentsEndPoints);
+        int offset = writer.position;
+        writer.writeInt(node.mid);
+        writer.writeInt(startPoints);
+        writer.writeInt(endPoints);
+        writer.writeInt(left);
+        writer.writeInt(right);
+        return offset;
+    }
+
+    static int writeInts(Writer writer, int[] values) throws IOException {
+        int offset = writer.position;
+        writer.writeInt(values.length);
+        for (int value: values) {
+            writer.writeInt(value);
+        }
+        return offset;
+    }
+
+    static int writeSegmentTree(Writer writer, SegmentTree segmentTree)
+            throws IOException {
+        int xs = writeInts(writer, segmentTree.xs);
+        int canonicalStarts = writeInts(writer, segmentTree.canonicalStarts);
+        int verticalStarts = writeInts(writer, segmentTree.verticalStarts);
+        int segmentIds = writeInts(writer, segmentTree.segmentIds);
+        int offset = writer.position;
+        writer.writeInt(segmentTree.elementaryIntervalCount);
+        writer.writeInt(xs);
+        writer.writeInt(canonicalStarts);
+        writer.writeInt(verticalStarts);
+        writer.writeInt(segmentIds);
+        return offset;
+    }
+
+    static void save(TwoDimensionalRangeTree.RangeNode root, Path path)
+            throws IOException {
+        try (Writer writer = new Writer(path)) {
+            int offset = writeRangeTree(writer, root);
+            writer.writeHeader(RANGE_TREE, offset, NONE);
+        }
+    }
+
+    static void save(TwoDimensionalKDTree.KDNode root, Path path)
+            throws IOException {
+        try (Writer writer = new Writer(path)) {
+            int offset = writeKDTree(writer, root);
+            writer.writeHeader(KD_TREE, offset, NONE);
+        }
+    }
+
+    static void save(IntervalTree.IntervalNode root, Path path)
+            throws IOException {
+        try (Writer writer = new Writer(path)) {
+            int segments = writeSegments(writer,
+                    root == null ? new Segment[0] : root.segments);
+            int offset = writeIntervalTree(writer, root);
+            writer.writeHeader(INTERVAL_TREE, offset, segments);
+        }
+    }
+
+    static void save(SegmentTree segmentTree, Path path) throws IOException {
+        try (Writer writer = new Writer(path)) {
+            int segments = writeSegments(writer, segmentTree.segments);
+            int offset = writeSegmentTree(writer, segmentTree);
+            writer.writeHeader(SEGMENT_TREE, offset, segments);
+        }
+    }
+
+    // Map the snapshot and validate its header.
+    static MappedByteBuffer map(Path path, int type) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE ||
+                    channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot " + path);
+        } else if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " +
+                    buffer.getInt(4));
+        } else if (buffer.getInt(8) != type) {
+            throw new IOException("Unexpected snapshot type " +
+                    buffer.getInt(8));
+        }
+        return buffer;
+    }
+
+    static MappedRangeTree openRangeTree(Path path) throws IOException {
+        return new MappedRangeTree(map(path, RANGE_TREE));
+    }
+
+    static MappedKDTree openKDTree(Path path) throws IOException {
+        return new MappedKDTree(map(path, KD_TREE));
+    }
+
+    static MappedIntervalTree openIntervalTree(Path path) throws IOException {
+        return new MappedIntervalTree(map(path, INTERVAL_TREE));
+    }
+
+    static MappedSegmentTree openSegmentTree(Path path) throws IOException {
+        return new MappedSegmentTree(map(path, SEGMENT_TREE));
+    }
+
+    // Receives the entries found in the mapped canonical sets.
+    interface EntrySink {
+        boolean accept(int x, int y, int payload);
+    }
+
+    // Queries shared by the mapped structures.
+    static class MappedSnapshot {
+        ByteBuffer buffer;
+        int root;
+        int segments;
+
+        MappedSnapshot(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.root = buffer.getInt(12);
+            this.segments = buffer.getInt(16);
+        }
+
+        int getInt(int offset, int field) {
+            return buffer.getInt(offset + field * Integer.BYTES);
+        }
+
+        Segment getSegment(int id) {
+            int offset = segments + Integer.BYTES + id * 4 * Integer.BYTES;
+            return new Segment(buffer.getInt(offset),
+                    buffer.getInt(offset + 4), buffer.getInt(offset + 8),
+                    buffer.getInt(offset + 12));
+        }
+
+        // Report the entries with a y coordinate within the window, after a
+        // binary search for the window's startY.
+        boolean findEntries(int entries, Window window, EntrySink sink) {
+            int count = buffer.getInt(entries);
+            int base = entries + Integer.BYTES;
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getInt(base + mid * 12 + 4) < window.getStartY()) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < count; i++) {
+                int entry = base + i * 12;
+                int y = buffer.getInt(entry + 4);
+                if (y > window.getEndY()) {
+                    break;
+                }
+                if (!sink.accept(buffer.getInt(entry), y,
+                        buffer.getInt(entry + 8))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // The range node fields.
+        static final int X = 0;
+        static final int Y = 1;
+        static final int LEFT = 2;
+        static final int RIGHT = 3;
+        static final int CANONICAL_SET = 4;
+
+        boolean isLeaf(int node) {
+            return getInt(node, LEFT) == NONE && getInt(node, RIGHT) == NONE;
+        }
+
+        // Report the leaf entry if it is within the window.
+        boolean findLeaf(int node, Window window, EntrySink sink) {
+            int x = getInt(node, X);
+            int y = getInt(node, Y);
+            if (x < window.getStartX() || x > window.getEndX() ||
+                    y < window.getStartY() || y > window.getEndY()) {
+                return true;
+            }
+            int entries = getInt(node, CANONICAL_SET);
+            return sink.accept(x, y,
+                    buffer.getInt(entries + 3 * Integer.BYTES));
+        }
+
+        // Same as TwoDimensionalRangeTree.findSubtreePointsInWindow.
+        boolean findRangeTreeSubtreeEntries(int node, Window window,
+                                            EntrySink sink,
+                                            boolean isLeftSubtree) {
+            if (node == NONE) {
+                return true;
+            } else if (isLeaf(node)) {
+                return findLeaf(node, window, sink);
+            }
+            int x = getInt(node, X);
+            int left = getInt(node, LEFT);
+            int right = getInt(node, RIGHT);
+            if (isLeftSubtree) {
+                if (x >= window.getStartX()) {
+                    return findRangeTreeSubtreeEntries(left, window, sink,
+                            isLeftSubtree) &&
+                            findEntries(getInt(right, CANONICAL_SET), window,
+                                    sink);
+                } else {
+                    return findRangeTreeSubtreeEntries(right, window, sink,
+                            isLeftSubtree);
+                }
+            } else {
+                if (x <= window.getEndX()) {
+                    return findEntries(getInt(left, CANONICAL_SET), window,
+                            sink) &&
+                            findRangeTreeSubtreeEntries(right, window, sink,
+                                    isLeftSubtree);
+                } else {
+                    return findRangeTreeSubtreeEntries(left, window, sink,
+                            isLeftSubtree);
+                }
+            }
+        }
+
+        // Same as TwoDimensionalRangeTree.findPoints.
+        boolean findRangeTreeEntries(int node, Window window, EntrySink sink) {
+            while (node != NONE) {
+                if (getInt(node, X) < window.getStartX()) {
+                    node = getInt(node, RIGHT);
+                } else if (getInt(node, X) > window.getEndX()) {
+                    node = getInt(node, LEFT);
+                } else {
+                    break;
+                }
+            }
+            if (node == NONE) {
+                return true;
+            } else if (isLeaf(node)) {
+                return findLeaf(node, window, sink);
+            }
+            return findRangeTreeSubtreeEntries(getInt(node, LEFT), window,
+                    sink, /*isLeftSubtree=*/true) &&
+                    findRangeTreeSubtreeEntries(getInt(node, RIGHT), window,
+                            sink, /*isLeftSubtree=*/false);
+        }
+    }
+
+    static class MappedRangeTree extends MappedSnapshot {
+        MappedRangeTree(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        void findPoints(Window window, List<Point> points) {
+            findPoints(window, points::add);
+        }
+
+        boolean findPoints(Window window, PointSink sink) {
+            return findRangeTreeEntries(root, window,
+                    (x, y, payload) -> sink.accept(new Point(x, y)));
+        }
+    }
+
+    static class MappedKDTree extends MappedSnapshot {
+        MappedKDTree(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        void findPoints(Window window, List<Point> points, Window region,
+                        boolean checkXCoordinate) {
+            findPoints(window, points::add, region, checkXCoordinate);
+        }
+
+        boolean findPoints(Window window, PointSink sink, Window region,
+                           boolean checkXCoordinate) {
+            return findSubtreePointsWithinWindow(root, window, sink,
+                    region.getStartX(), region.getStartY(), region.getEndX(),
+                    region.getEndY(), checkXCoordinate);
+        }
+
+        // Window.contains for the region with the given bounds.
+        static boolean contains(Window window, int startX, int startY,
+                                int endX, int endY) {
+            return window.getStartX() <= startX && endX <= window.getEndX() &&
+                    window.getStartY() <= startY && endY <= window.getEndY();
+        }
+
+        // Window.intersects for the region with the given bounds.
+        static boolean intersects(Window window, int startX, int startY,
+                                  int endX, int endY) {
+            return window.getStartX() <= endX && startX <= window.getEndX() &&
+                    window.getStartY() <= endY && startY <= window.getEndY();
+        }
+
+        boolean addLeafsInorder(int node, PointSink sink) {
+            if (node == NONE) {
+                return true;
+            } else if (isLeaf(node)) {
+                return sink.accept(new Point(getInt(node, X), getInt(node, Y)));
+            }
+            return addLeafsInorder(getInt(node, LEFT), sink) &&
+                    addLeafsInorder(getInt(node, RIGHT), sink);
+        }
+
+        // Same as TwoDimensionalKDTree.findSubtreePointsWithinWindow. The
+        // region is passed by its bounds and split in place, so only the
+        // reported points are created.
+        boolean findSubtreePointsWithinWindow(int node, Window window,
+                                              PointSink sink, int startX,
+                                              int startY, int endX, int endY,
+                                              boolean checkXCoordinate) {
+            if (node == NONE) {
+                return true;
+            }
+            int x = getInt(node, X);
+            int y = getInt(node, Y);
+            if (isLeaf(node)) {
+                if (x >= window.getStartX() && x <= window.getEndX() &&
+                        y >= window.getStartY() && y <= window.getEndY()) {
+                    return sink.accept(new Point(x, y));
+                }
+                return true;
+            }
+            // The left region ends and the right region starts at the split.
+            int leftEndX = checkXCoordinate ? x : endX;
+            int leftEndY = checkXCoordinate ? endY : y;
+            int rightStartX = checkXCoordinate ? x : startX;
+            int rightStartY = checkXCoordinate ? startY : y;
+            int left = getInt(node, LEFT);
+            if (contains(window, startX, startY, leftEndX, leftEndY)) {
+                if (!addLeafsInorder(left, sink)) {
+                    return false;
+                }
+            } else if (intersects(window, startX, startY, leftEndX,
+                    leftEndY)) {
+                if (!findSubtreePointsWithinWindow(left, window, sink, startX,
+                        startY, leftEndX, leftEndY, !checkXCoordinate)) {
+                    return false;
+                }
+            }
+            int right = getInt(node, RIGHT);
+            if (contains(window, rightStartX, rightStartY, endX, endY)) {
+                return addLeafsInorder(right, sink);
+            } else if (intersects(window, rightStartX, rightStartY, endX,
+                    endY)) {
+                return findSubtreePointsWithinWindow(right, window, sink,
+                        rightStartX, rightStartY, endX, endY,
+                        !checkXCoordinate);
+            }
+            return true;
+        }
+    }
+
+    static class MappedIntervalTree extends MappedSnapshot {
+        // The interval node fields.
+        static final int MID = 0;
+        static final int START_POINTS = 1;
+        static final int END_POINTS = 2;
+        static final int INTERVAL_LEFT = 3;
+        static final int INTERVAL_RIGHT = 4;
+
+        MappedIntervalTree(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        void findSegmentsCrossingLine(QueryLine queryLine,
+                                      List<Segment> segments) {
+            findSegmentsCrossingLine(queryLine, segments::add);
+        }
+
+        boolean findSegmentsCrossingLine(QueryLine queryLine,
+                                         SegmentSink sink) {
+            return findSegmentsCrossingLine(root, queryLine, sink);
+        }
+
+        // Same as IntervalTree.findSegmentsCrossingLine.
+        boolean findSegmentsCrossingLine(int node, QueryLine queryLine,
+                                         SegmentSink sink) {
+            if (node == NONE) {
+                return true;
+            }
+            int queryX = queryLine.getX();
+            int mid = getInt(node, MID);
+            EntrySink entrySink =
+                    (x, y, payload) -> sink.accept(getSegment(payload));
+            if (mid >= queryX) {
+                if (mid > queryX && !findSegmentsCrossingLine(
+                        getInt(node, INTERVAL_LEFT), queryLine, sink)) {
+                    return false;
+                }
+                Window window = new Window(Integer.MIN_VALUE,
+                        queryLine.getStartY(), queryX, queryLine.getEndY());
+                return findRangeTreeEntries(getInt(node, START_POINTS),
+                        window, entrySink);
+            } else {
+                Window window = new Window(queryX, queryLine.getStartY(),
+                        Integer.MAX_VALUE, queryLine.getEndY());
+                if (!findRangeTreeEntries(getInt(node, END_POINTS), window,
+                        entrySink)) {
+                    return false;
+                }
+                return findSegmentsCrossingLine(getInt(node, INTERVAL_RIGHT),
+                        queryLine, sink);
+            }
+        }
+    }
+
+    static class MappedSegmentTree extends MappedSnapshot {
+        // The segment tree fields, and the offsets of the values of its
+        // arrays.
+        static final int ELEMENTARY_INTERVAL_COUNT = 0;
+        static final int XS = 1;
+        static final int CANONICAL_STARTS = 2;
+        static final int VERTICAL_STARTS = 3;
+        static final int SEGMENT_IDS = 4;
+        int xs;
+        int canonicalStarts;
+        int verticalStarts;
+        int segmentIds;
+
+        MappedSegmentTree(ByteBuffer buffer) {
+            super(buffer);
+            xs = getInt(root, XS) + Integer.BYTES;
+            canonicalStarts = getInt(root, CANONICAL_STARTS) + Integer.BYTES;
+            verticalStarts = getInt(root, VERTICAL_STARTS) + Integer.BYTES;
+            segmentIds = getInt(root, SEGMENT_IDS) + Integer.BYTES;
+        }
+
+        void findSegments(QueryLine queryLine, List<Segment> segments) {
+            findSegments(queryLine, segments::add);
+        }
+
+        // Same as SegmentTree.findElementaryInterval.
+        int findElementaryInterval(int x) {
+            int low = 0;
+            int high = buffer.getInt(xs - Integer.BYTES);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getInt(xs, mid) < x) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low < buffer.getInt(xs - Integer.BYTES) &&
+                    getInt(xs, low) == x) {
+                return 2 * low + 1;
+            }
+            return 2 * low;
+        }
+
+        // Compare the segment with the given id with the height y at x, as
+        // SegmentTree.compareToHeight does, without creating the segment.
+        int compareToHeight(int id, int x, int y) {
+            int offset = segments + Integer.BYTES + id * 4 * Integer.BYTES;
+            return SegmentTree.compareToHeight(buffer.getInt(offset),
+                    buffer.getInt(offset + 4), buffer.getInt(offset + 8),
+                    buffer.getInt(offset + 12), x, y);
+        }
+
+        // Same as SegmentTree.findSegments.
+        boolean findSegments(QueryLine queryLine, SegmentSink sink) {
+            int elementaryInterval = findElementaryInterval(queryLine.getX());
+            int node = 1;
+            int first = 0;
+            int last = getInt(root, ELEMENTARY_INTERVAL_COUNT) - 1;
+            while (true) {
+                if (!findSegments(getInt(canonicalStarts, node),
+                        getInt(verticalStarts, node), queryLine, sink) ||
+                        !findSegments(getInt(verticalStarts, node),
+                                getInt(canonicalStarts, node + 1), queryLine,
+                                sink)) {
+                    return false;
+                } else if (first == last) {
+                    return true;
+                }
+                int mid = (first + last) >>> 1;
+                if (elementaryInterval <= mid) {
+                    node = 2 * node;
+                    last = mid;
+                } else {
+                    node = 2 * node + 1;
+                    first = mid + 1;
+                }
+            }
+        }
+
+        // Same as SegmentTree.findSegments for a slice of a canonical set.
+        boolean findSegments(int from, int to, QueryLine queryLine,
+                             SegmentSink sink) {
+            int queryX = queryLine.getX();
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareToHeight(getInt(segmentIds, mid), queryX,
+                        queryLine.getStartY()) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < to; i++) {
+                int id = getInt(segmentIds, i);
+                if (compareToHeight(id, queryX, queryLine.getEndY()) > 0) {
+                    break;
+                }
+                if (!sink.accept(getSegment(id))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        TwoDimensionalRangeTree twoDimensionalRangeTree =
+                new TwoDimensionalRangeTree();
+        Set<Point> pointSetX = new TreeSet<>(Utils.getPointXComparator());
+        Set<Point> pointSetY = new TreeSet<>(Utils.getPointYComparator());
+        Set<Integer> seenX = new HashSet<>();
+        Set<Integer> seenY = new HashSet<>();
+        do {
+            Point point = new Point(Utils.getRandomPositiveInteger(40),
+                    Utils.getRandomPositiveInteger(40));
+            if (seenX.contains(point.getX()) || seenY.contains(point.getY())) {
+                continue;
+            }
+            seenX.add(point.getX());
+            seenY.add(point.getY());
+            pointSetX.add(point);
+            pointSetY.add(point);
+        } while (pointSetX.size() < 10);
+        List<Point> pointsX = new ArrayList<>(pointSetX);
+        List<Point> pointsY = new ArrayList<>(pointSetY);
+        System.out.println("Input points::");
+        Utils.print(pointsX);
+
+        // Save the 2D range tree, then query the mapped snapshot.
+        TwoDimensionalRangeTree.RangeNode root =
+                twoDimensionalRangeTree.build(pointsX, pointsY);
+        Path path = Files.createTempFile("range-tree",
+                ".snapshot");
+        save(root, path);
+        MappedRangeTree mappedRangeTree = openRangeTree(path);
+        Window window = new Window(1, 1, 20, 40);
+        List<Point> pointsReturned = new ArrayList<>();
+        mappedRangeTree.findPoints(window, pointsReturned);
+        System.out.println("Points returned from snapshot");
+        Utils.print(pointsReturned);
+        Files.delete(path);
+
+        // Save the KD tree, then query the mapped snapshot.
+        TwoDimensionalKDTree twoDimensionalKDTree = new TwoDimensionalKDTree();
+        TwoDimensionalKDTree.KDNode kdRoot = twoDimensionalKDTree.build(
+                pointsX, pointsY, /*splitByXCoordinate*/true);
+        path = Files.createTempFile("kd-tree", ".snapshot");
+        save(kdRoot, path);
+        MappedKDTree mappedKDTree = openKDTree(path);
+        List<Point> kdPointsReturned = new ArrayList<>();
+        mappedKDTree.findPoints(window, kdPointsReturned,
+                new Window(0, 0, 40, 40), /*checkXCoordinate=*/true);
+        System.out.println("Points returned from KD tree snapshot");
+        Utils.print(kdPointsReturned);
+        Files.delete(path);
+
+        // Horizontal segments starting at the points, which do not cross.
+        List<Segment> segments = new ArrayList<>();
+        for (Point point: pointsX) {
+            segments.add(new Segment(point.getX(), point.getY(),
+                    point.getX() + Utils.getRandomPositiveInteger(20),
+                    point.getY()));
+        }
+        System.out.println("Input segments:");
+        for (Segment segment: segments) {
+            System.out.println(segment);
+        }
+        QueryLine queryLine = new QueryLine(15, 0, 40);
+        System.out.println("Query Line:");
+        System.out.println(queryLine);
+
+        // Save the interval tree, then query the mapped snapshot.
+        IntervalTree intervalTree = new IntervalTree();
+        List<Segment> segmentsSortedByStartX = new ArrayList<>(segments);
+        List<Segment> segmentsSortedByEndX = new ArrayList<>(segments);
+        segmentsSortedByStartX.sort(Utils.getSegmentStartXComparator());
+        segmentsSortedByEndX.sort(Utils.getSegmentEndXComparator());
+        IntervalTree.IntervalNode intervalRoot = intervalTree.build(
+                segmentsSortedByStartX, segmentsSortedByEndX);
+        path = Files.createTempFile("interval-tree", ".snapshot");
+        save(intervalRoot, path);
+        MappedIntervalTree mappedIntervalTree = openIntervalTree(path);
+        List<Segment> intervalSegmentsReturned = new ArrayList<>();
+        mappedIntervalTree.findSegmentsCrossingLine(queryLine,
+                intervalSegmentsReturned);
+        System.out.println("Segments returned from interval tree snapshot:");
+        for (Segment segment: intervalSegmentsReturned) {
+            System.out.println(segment);
+        }
+        Files.delete(path);
+
+        // Save the segment tree, then query the mapped snapshot.
+        SegmentTree segmentTree = new SegmentTree(segments);
+        path = Files.createTempFile("segment-tree", ".snapshot");
+        save(segmentTree, path);
+        MappedSegmentTree mappedSegmentTree = openSegmentTree(path);
+        List<Segment> segmentTreeSegmentsReturned = new ArrayList<>();
+        mappedSegmentTree.findSegments(queryLine, segmentTreeSegmentsReturned);
+        System.out.println("Segments returned from segment tree snapshot:");
+        for (Segment segment: segmentTreeSegmentsReturned) {
+            System.out.println(segment);
+        }
+        Files.delete(path);
+    }
+}
@@ -1,8 +1,11 @@
 package com.geometric.tree;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import com.geometric.util.Geometric.*;
+import com.geometric.util.PointBatch;
 import com.geometric.util.Utils;
 
 public class TwoDimensionalKDTree {
@@ -17,8 +20,43 @@ public class TwoDimensionalKDTree {
     // =====
     // Queries are satisfied by finding the subregions that within the query
     // window, and then accumulating the nodes within these subregions.
+    //
+    // Insert and Delete
+    // =================
+    // Points are inserted and deleted by descending the existing splits, and
+    // the tree is kept balanced as a scapegoat tree.
+    // a. An insert replaces the leaf it reaches with a node splitting the
+    // leaf's point and the new point by the coordinate for that level.
+    // b. A delete removes the leaf of the point, and with it the ancestors
+    // left without children. The remaining nodes keep their level, so the
+    // alternation of the split coordinate is unchanged.
+    // c. After either, the highest node on the path whose larger child holds
+    // more than alpha of its points is rebuilt from its points.
+    //
+    // Scan Columns
+    // ============
+    // The highest nodes with at most scanThreshold points also keep their
+    // points, in order, as x and y columns. A window query reaching such a
+    // node scans the columns with the WindowScan instead of walking down the
+    // tree. Insert and delete recompute the columns around the updated path,
+    // see updateScanColumns.
+    static final double DEFAULT_ALPHA = 0.7;
+    static final int DEFAULT_SCAN_THRESHOLD = 256;
+    // Subtrees with fewer points than this are built sequentially by the
+    // parallel build, as forking them costs more than it saves.
+    static final int PARALLEL_BUILD_THRESHOLD = 1 << 13;
+    double alpha = DEFAULT_ALPHA;
+    int scanThreshold = DEFAULT_SCAN_THRESHOLD;
     class KDNode {
         Point point;
+        // Number of leaves in the subtree, used by the parallel query to
+        // decide which subtrees to fork.
+        int size = 1;
+        // The subtree points in order, and their coordinates, or null if the
+        // node does not keep scan columns.
+        Point[] scanPoints;
+        int[] xs;
+        int[] ys;
         KDNode left;
         KDNode right;
         KDNode(Point point) {
@@ -30,15 +68,92 @@ public class TwoDimensionalKDTree {
     }
 
     // We add points corresponding to the leaf nodes in order.
-    void addLeafsInorder(KDNode node, List<Point> points) {
+    // Returns false if the sink stopped the traversal.
+    boolean addLeafsInorder(KDNode node, PointSink sink) {
         if (node == null) {
+            return true;
+        } else if (node.isLeaf()) {
+            return sink.accept(node.point);
+        }
+        return addLeafsInorder(node.left, sink) &&
+                addLeafsInorder(node.right, sink);
+    }
+
+    // Keep the subtree points in order as the scan columns of the node.
+    void buildScanColumns(KDNode node) {
+        node.scanPoints = new Point[node.size];
+        node.xs = new int[node.size];
+        node.ys = new int[node.size];
+        int[] count = new int[1];
+        addLeafsInorder(node, point -> {
+            node.scanPoints[count[0]] = point;
+            node.xs[count[0]] = point.getX();
+            node.ys[count[0]++] = point.getY();
+            return true;
+        });
+    }
+
+    void clearScanColumns(KDNode node) {
+        if (node != null) {
+            node.scanPoints = null;
+            node.xs = null;
+            node.ys = null;
+        }
+    }
+
+    // Set the scan columns of the node once its subtree is built. A node
+    // with at most scanThreshold points takes them over from its children,
+    // so only the highest such nodes keep them.
+    void setScanColumns(KDNode node) {
+        if (node.size <= scanThreshold) {
+            buildScanColumns(node);
+            clearScanColumns(node.left);
+            clearScanColumns(node.right);
+        } else {
+            clearScanColumns(node);
+        }
+    }
+
+    // Recompute the scan columns of the subtree bottom up.
+    // Time Complexity = O(nlog(scanThreshold))
+    void rebuildScanColumns(KDNode node) {
+        if (node == null || node.isLeaf()) {
             return;
         }
-        addLeafsInorder(node.left, points);
-        if (node.isLeaf()) {
-            points.add(node.point);
+        rebuildScanColumns(node.left);
+        rebuildScanColumns(node.right);
+        setScanColumns(node);
+    }
+
+    // Recompute the scan columns after an insert or delete changed the sizes
+    // on the path by one, given the subtree the point went to below the path.
+    // The nodes with more than 2 * scanThreshold + 2 points keep no columns
+    // before or after, and neither do their other children change, so only
+    // the highest subtree on the path with at most that many points is
+    // recomputed. A subtree rebuilt by the rebalance already has its columns.
+    // Time Complexity = O(scanThreshold * log(scanThreshold))
+    void updateScanColumns(List<KDNode> path, KDNode subtree) {
+        for (KDNode node: path) {
+            if (node.size <= 2 * scanThreshold + 2) {
+                rebuildScanColumns(node);
+                return;
+            }
+        }
+        rebuildScanColumns(subtree);
+    }
+
+    // Scan the node's scan columns for the points within the window.
+    // Returns false if the sink stopped the traversal.
+    boolean scanPoints(KDNode node, Window window, PointSink sink) {
+        int[] matches = new int[node.xs.length];
+        int count = WindowScan.getInstance().scan(node.xs, node.ys, 0,
+                node.xs.length, window, matches);
+        for (int i = 0; i < count; i++) {
+            if (!sink.accept(node.scanPoints[matches[i]])) {
+                return false;
+            }
         }
-        addLeafsInorder(node.right, points);
+        return true;
     }
 
     // Find the points in the subtree that lie within the window.
@@ -47,32 +162,458 @@ public class TwoDimensionalKDTree {
     void findSubtreePointsWithinWindow(KDNode node, Window window,
                                        List<Point> points, Window region,
                                        boolean checkXCoordinate) {
+        findSubtreePointsWithinWindow(node, window, points::add, region,
+                checkXCoordinate);
+    }
+
+    // Visits a child subtree reached by the window query, whose region
+    // intersects the window. The sequential query walks it, while the
+    // parallel query forks the large ones.
+    interface SubtreeVisitor {
+        boolean visit(KDNode child, Window window, PointSink sink,
+                      Window childRegion, boolean checkXCoordinate);
+    }
+
+    // The visitor of the sequential query.
+    final SubtreeVisitor sequentialVisitor = this::walkSubtree;
+
+    // Walk the child subtree, reporting all its points if its region is
+    // within the window.
+    boolean walkSubtree(KDNode child, Window window, PointSink sink,
+                        Window childRegion, boolean checkXCoordinate) {
+        if (window.contains(childRegion)) {
+            return addLeafsInorder(child, sink);
+        }
+        return findSubtreePointsWithinWindow(child, window, sink, childRegion,
+                checkXCoordinate, sequentialVisitor);
+    }
+
+    // Stream the points in the subtree that lie within the window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findSubtreePointsWithinWindow(KDNode node, Window window,
+                                          PointSink sink, Window region,
+                                          boolean checkXCoordinate) {
+        return findSubtreePointsWithinWindow(node, window, sink, region,
+                checkXCoordinate, sequentialVisitor);
+    }
+
+    // The query handing the children whose regions intersect the window to
+    // the visitor.
+    boolean findSubtreePointsWithinWindow(KDNode node, Window window,
+                                          PointSink sink, Window region,
+                                          boolean checkXCoordinate,
+                                          SubtreeVisitor visitor) {
         if (node == null) {
-            return;
+            return true;
         } else if (node.isLeaf()) {
             if (window.isPointInWindow(node.point)) {
-                points.add(node.point);
+                return sink.accept(node.point);
             }
-            return;
+            return true;
+        } else if (node.scanPoints != null) {
+            return scanPoints(node, window, sink);
         }
         // Find the subtree regions after splitting by the given horizontal or
         // vertical line.
         Window childRegions[] = region.getRegionSplitByLine(node.point,
                 checkXCoordinate);
-        if (window.contains(childRegions[0])) {
-            addLeafsInorder(node.left, points);
-        } else if (window.intersects(childRegions[0])) {
-            findSubtreePointsWithinWindow(node.left, window, points,
-                    childRegions[0], !checkXCoordinate);
+        if (window.intersects(childRegions[0]) && !visitor.visit(node.left,
+                window, sink, childRegions[0], !checkXCoordinate)) {
+            return false;
+        }
+        if (window.intersects(childRegions[1])) {
+            return visitor.visit(node.right, window, sink, childRegions[1],
+                    !checkXCoordinate);
+        }
+        return true;
+    }
+
+    int size(KDNode node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Whether the point is on the left side of the split at the node.
+    // Points are ordered by the splitting coordinate and then by the other
+    // one, the order the in place build selects its splits in, so points
+    // sharing the splitting coordinate with the node can be on either side.
+    boolean isLeftOfSplit(KDNode node, Point point, boolean splitByXCoordinate) {
+        int first = splitByXCoordinate ? point.getX() : point.getY();
+        int second = splitByXCoordinate ? point.getY() : point.getX();
+        int splitFirst = splitByXCoordinate ? node.point.getX() :
+                node.point.getY();
+        int splitSecond = splitByXCoordinate ? node.point.getY() :
+                node.point.getX();
+        return first < splitFirst ||
+                (first == splitFirst && second <= splitSecond);
+    }
+
+    void replaceChild(KDNode parent, KDNode child, KDNode replacement) {
+        if (parent.left == child) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+    }
+
+    // Rebuild the subtree from its points with the in place build, whose
+    // splits are ordered as isLeftOfSplit expects.
+    KDNode rebuild(KDNode node, boolean splitByXCoordinate) {
+        List<Point> pointList = new ArrayList<>(size(node));
+        addLeafsInorder(node, pointList::add);
+        Point[] points = pointList.toArray(new Point[0]);
+        int[] indices = new int[points.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        return build(PointBatch.of(pointList), indices, 0, indices.length,
+                splitByXCoordinate, points);
+    }
+
+    // Rebuild the highest unbalanced node on the path from the root, and
+    // return the root of the tree.
+    KDNode rebalance(KDNode root, List<KDNode> path,
+                     boolean splitByXCoordinate) {
+        for (int i = 0; i < path.size(); i++) {
+            KDNode node = path.get(i);
+            if (Math.max(size(node.left), size(node.right)) >
+                    alpha * size(node)) {
+                KDNode rebuiltNode = rebuild(node,
+                        splitByXCoordinate == (i % 2 == 0));
+                if (i == 0) {
+                    return rebuiltNode;
+                }
+                replaceChild(path.get(i - 1), node, rebuiltNode);
+                return root;
+            }
+        }
+        return root;
+    }
+
+    // Insert the point into the tree, and return the root of the tree.
+    // The tree must come from the in place build or from inserts, as the
+    // splits of the other builds send the points sharing the median to the
+    // left. A point already in the tree is not inserted again.
+    // Time Complexity = O(log^2n + scanThreshold * log(scanThreshold))
+    // amortized
+    KDNode insert(KDNode root, Point point, boolean splitByXCoordinate) {
+        if (root == null) {
+            return new KDNode(point);
+        }
+        List<KDNode> path = new ArrayList<>();
+        // The subtree below the path that the point went to.
+        KDNode subtree = null;
+        KDNode node = root;
+        boolean splitByX = splitByXCoordinate;
+        while (!node.isLeaf()) {
+            path.add(node);
+            boolean isLeft = isLeftOfSplit(node, point, splitByX);
+            KDNode child = isLeft ? node.left : node.right;
+            if (child == null) {
+                // The side was emptied by deletes, the point becomes its leaf.
+                subtree = new KDNode(point);
+                if (isLeft) {
+                    node.left = subtree;
+                } else {
+                    node.right = subtree;
+                }
+                node = null;
+                break;
+            }
+            node = child;
+            splitByX = !splitByX;
+        }
+        if (node != null) {
+            if (node.point.getX() == point.getX() &&
+                    node.point.getY() == point.getY()) {
+                return root;
+            }
+            // The split is the smaller of the two points, as in the in
+            // place build.
+            KDNode leaf = new KDNode(point);
+            boolean isLeft = isLeftOfSplit(node, point, splitByX);
+            KDNode splitNode = new KDNode(isLeft ? point : node.point);
+            splitNode.left = isLeft ? leaf : node;
+            splitNode.right = isLeft ? node : leaf;
+            splitNode.size = 2;
+            if (path.isEmpty()) {
+                setScanColumns(splitNode);
+                return splitNode;
+            }
+            replaceChild(path.getLast(), node, splitNode);
+            subtree = splitNode;
+        }
+        for (KDNode pathNode: path) {
+            pathNode.size++;
+        }
+        root = rebalance(root, path, splitByXCoordinate);
+        updateScanColumns(path, subtree);
+        return root;
+    }
+
+    // Delete the point with the given coordinates from the tree, and return
+    // the root of the tree, or null once the tree is empty. As for insert, the
+    // tree must come from the in place build or from inserts.
+    // Time Complexity = O(log^2n + scanThreshold * log(scanThreshold))
+    // amortized
+    KDNode delete(KDNode root, Point point, boolean splitByXCoordinate) {
+        List<KDNode> path = new ArrayList<>();
+        KDNode node = root;
+        boolean splitByX = splitByXCoordinate;
+        while (node != null && !node.isLeaf()) {
+            path.add(node);
+            node = isLeftOfSplit(node, point, splitByX) ? node.left :
+                    node.right;
+            splitByX = !splitByX;
+        }
+        if (node == null || node.point.getX() != point.getX() ||
+                node.point.getY() != point.getY()) {
+            return root;
+        } else if (path.isEmpty()) {
+            return null;
+        }
+        // Remove the leaf and the ancestors left without children.
+        int i = path.size() - 1;
+        replaceChild(path.get(i), node, null);
+        while (path.get(i).isLeaf()) {
+            if (i == 0) {
+                return null;
+            }
+            replaceChild(path.get(i - 1), path.get(i), null);
+            i--;
+        }
+        path = path.subList(0, i + 1);
+        for (KDNode pathNode: path) {
+            pathNode.size--;
+        }
+        root = rebalance(root, path, splitByXCoordinate);
+        updateScanColumns(path, /*subtree=*/null);
+        return root;
+    }
+
+    // Walks a subtree of the window query in the fork/join pool, with the
+    // traversal of the sequential query. The large children it reaches are
+    // forked, and the others are walked sequentially into the buffer.
+    @SuppressWarnings("serial")
+    class WindowQueryTask extends ParallelQueryTask {
+        KDNode node;
+        Window window;
+        Window region;
+        boolean checkXCoordinate;
+        WindowQueryTask(KDNode node, Window window, Window region,
+                        boolean checkXCoordinate) {
+            this.node = node;
+            this.window = window;
+            this.region = region;
+            this.checkXCoordinate = checkXCoordinate;
+        }
+
+        @Override
+        void query() {
+            findSubtreePointsWithinWindow(node, window,
+                    point -> buffer().add(point), region, checkXCoordinate,
+                    this::visit);
+        }
+
+        // Fork the child if it is large, or else walk it sequentially into
+        // the buffer.
+        boolean visit(KDNode child, Window window, PointSink sink,
+                      Window childRegion, boolean checkXCoordinate) {
+            if (size(child) >= PARALLEL_QUERY_THRESHOLD) {
+                fork(new WindowQueryTask(child, window, childRegion,
+                        checkXCoordinate));
+                return true;
+            }
+            return walkSubtree(child, window, sink, childRegion,
+                    checkXCoordinate);
+        }
+    }
+
+    // Find the points in the subtree that lie within the window on the
+    // fork/join pool. The points are returned as the buffers of the tasks, in
+    // the order of the sequential query, see ParallelQueryTask.concatenate.
+    List<List<Point>> findSubtreePointsWithinWindow(KDNode node, Window window,
+                                                    Window region,
+                                                    boolean checkXCoordinate,
+                                                    ForkJoinPool forkJoinPool) {
+        return forkJoinPool.invoke(new WindowQueryTask(node, window, region,
+                checkXCoordinate));
+    }
+
+    // The nearest points are compared by their X and Y lengths from the
+    // query point. A length between int coordinates is up to 2^32 - 1, so a
+    // squared distance may overflow a long, and squared distances are
+    // compared exactly with signOfSum.
+
+    // Compare dx1^2 + dy1^2 with dx2^2 + dy2^2, as the sign of
+    // (dx1 - dx2)(dx1 + dx2) + (dy1 - dy2)(dy1 + dy2).
+    int compareSquaredLengths(long dx1, long dy1, long dx2, long dy2) {
+        return Utils.signOfSum(dx1 - dx2, dx1 + dx2, dy1 - dy2, dy1 + dy2);
+    }
+
+    // Compare the distances of two points from the query point.
+    int compareDistances(Point point1, Point point2, Point query) {
+        return compareSquaredLengths((long) point1.getX() - query.getX(),
+                (long) point1.getY() - query.getY(),
+                (long) point2.getX() - query.getX(),
+                (long) point2.getY() - query.getY());
+    }
+
+    // Compare the distance from the query point to the closest point of the
+    // region, 0 if the region contains it, with the distance to the point.
+    int compareDistances(Window region, Point point, Point query) {
+        return compareSquaredLengths(distanceX(query, region),
+                distanceY(query, region), (long) point.getX() - query.getX(),
+                (long) point.getY() - query.getY());
+    }
+
+    // Length along X from the point to the closest point of the region.
+    long distanceX(Point point, Window region) {
+        return Math.max(0, Math.max((long) region.getStartX() - point.getX(),
+                (long) point.getX() - region.getEndX()));
+    }
+
+    // Length along Y from the point to the closest point of the region.
+    long distanceY(Point point, Window region) {
+        return Math.max(0, Math.max((long) region.getStartY() - point.getY(),
+                (long) point.getY() - region.getEndY()));
+    }
+
+    // Whether dx^2 + dy^2 is at most the squared radius. A length over the
+    // radius is outside it, and otherwise the squared lengths are below 2^62,
+    // so the sum does not overflow.
+    boolean isWithinRadius(long dx, long dy, int radius) {
+        dx = Math.abs(dx);
+        dy = Math.abs(dy);
+        if (dx > radius || dy > radius) {
+            return false;
+        }
+        return dx * dx + dy * dy <= (long) radius * radius;
+    }
+
+    boolean isWithinRadius(Point point, Point center, int radius) {
+        return isWithinRadius((long) point.getX() - center.getX(),
+                (long) point.getY() - center.getY(), radius);
+    }
+
+    // Whether the closest point of the region is within the radius.
+    boolean isRegionNearRadius(Point center, Window region, int radius) {
+        return isWithinRadius(distanceX(center, region),
+                distanceY(center, region), radius);
+    }
+
+    // Whether the farthest corner of the region is within the radius.
+    boolean isRegionWithinRadius(Point center, Window region, int radius) {
+        long dx = Math.max(Math.abs((long) center.getX() - region.getStartX()),
+                Math.abs((long) center.getX() - region.getEndX()));
+        long dy = Math.max(Math.abs((long) center.getY() - region.getStartY()),
+                Math.abs((long) center.getY() - region.getEndY()));
+        return isWithinRadius(dx, dy, radius);
+    }
+
+    // Find the points in the subtree within the given distance of the
+    // center. As for the window query, the region of the node is split
+    // alternately by vertical and horizontal lines.
+    // a. A child region whose nearest point is farther than the radius from
+    // the center is skipped.
+    // b. A child region whose farthest corner is within the radius is
+    // reported without checking the distance of its points.
+    void findSubtreePointsWithinRadius(KDNode node, Point center, int radius,
+                                       List<Point> points, Window region,
+                                       boolean checkXCoordinate) {
+        findSubtreePointsWithinRadius(node, center, radius, points::add,
+                region, checkXCoordinate);
+    }
+
+    // Stream the points in the subtree within the given distance of the
+    // center to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findSubtreePointsWithinRadius(KDNode node, Point center,
+                                          int radius, PointSink sink,
+                                          Window region,
+                                          boolean checkXCoordinate) {
+        if (node == null) {
+            return true;
+        } else if (node.isLeaf()) {
+            if (isWithinRadius(node.point, center, radius)) {
+                return sink.accept(node.point);
+            }
+            return true;
+        }
+        Window childRegions[] = region.getRegionSplitByLine(node.point,
+                checkXCoordinate);
+        KDNode[] children = {node.left, node.right};
+        for (int i = 0; i < 2; i++) {
+            if (!isRegionNearRadius(center, childRegions[i], radius)) {
+                continue;
+            }
+            if (isRegionWithinRadius(center, childRegions[i], radius)) {
+                if (!addLeafsInorder(children[i], sink)) {
+                    return false;
+                }
+            } else if (!findSubtreePointsWithinRadius(children[i], center,
+                    radius, sink, childRegions[i], !checkXCoordinate)) {
+                return false;
+            }
         }
-        if (window.contains(childRegions[1])) {
-            addLeafsInorder(node.right, points);
-        } else if (window.intersects(childRegions[1])) {
-            findSubtreePointsWithinWindow(node.right, window, points,
-                    childRegions[1], !checkXCoordinate);
+        return true;
+    }
+
+    // Find the k points nearest to the query point, nearest first.
+    // The search is a branch and bound over the split regions.
+    // a. The child region closer to the query point is searched first.
+    // b. The k nearest points found so far are kept in a max heap.
+    // c. A child region is skipped once the heap is full and the region is
+    // no closer than the farthest point in the heap.
+    List<Point> nearest(KDNode node, Point query, int k,
+                        boolean checkXCoordinate) {
+        PriorityQueue<Point> nearestPoints = new PriorityQueue<>(
+                (point1, point2) -> compareDistances(point2, point1, query));
+        if (k > 0) {
+            findNearest(node, query, k, nearestPoints,
+                    new Window(Integer.MIN_VALUE, Integer.MIN_VALUE,
+                            Integer.MAX_VALUE, Integer.MAX_VALUE),
+                    checkXCoordinate);
         }
+        List<Point> points = new ArrayList<>(nearestPoints);
+        points.sort((point1, point2) -> compareDistances(point1, point2,
+                query));
+        return points;
+    }
 
-        return;
+    private void findNearest(KDNode node, Point query, int k,
+                             PriorityQueue<Point> nearestPoints, Window region,
+                             boolean checkXCoordinate) {
+        if (node == null) {
+            return;
+        } else if (node.isLeaf()) {
+            if (nearestPoints.size() < k) {
+                nearestPoints.add(node.point);
+            } else if (compareDistances(node.point, nearestPoints.peek(),
+                    query) < 0) {
+                nearestPoints.poll();
+                nearestPoints.add(node.point);
+            }
+            return;
+        }
+        Window childRegions[] = region.getRegionSplitByLine(node.point,
+                checkXCoordinate);
+        boolean leftFirst = compareSquaredLengths(
+                distanceX(query, childRegions[0]),
+                distanceY(query, childRegions[0]),
+                distanceX(query, childRegions[1]),
+                distanceY(query, childRegions[1])) <= 0;
+        KDNode[] children = leftFirst ?
+                new KDNode[]{node.left, node.right} :
+                new KDNode[]{node.right, node.left};
+        Window[] regions = leftFirst ? childRegions :
+                new Window[]{childRegions[1], childRegions[0]};
+        for (int i = 0; i < 2; i++) {
+            if (nearestPoints.size() < k || compareDistances(regions[i],
+                    nearestPoints.peek(), query) < 0) {
+                findNearest(children[i], query, k, nearestPoints, regions[i],
+                        !checkXCoordinate);
+            }
+        }
     }
 
     // We alternate between splitting by x coordinate and y coordinate.
@@ -142,9 +683,138 @@ public class TwoDimensionalKDTree {
             node.right = build(rightPointsSortedByX, rightPointsSortedByY,
                     /*splitByXCoordinate*/true);
         }
+        node.size = size(node.left) + size(node.right);
+        setScanColumns(node);
+        return node;
+    }
+
+    // Build the KD tree from a columnar batch of points.
+    // The batch indices are sorted by X and Y once, and every node then works
+    // on the same slice of both permutations.
+    KDNode build(PointBatch batch, boolean splitByXCoordinate) {
+        return build(batch, batch.toPoints(), batch.sortedIndices(true),
+                batch.sortedIndices(false), 0, batch.size(),
+                splitByXCoordinate, new int[batch.size()]);
+    }
+
+    // Build the subtree for a slice of the permutations. The permutation for
+    // the splitting coordinate is already split at the median, and a stable
+    // partition of the other permutation replaces the list intersection.
+    KDNode build(PointBatch batch, Point[] points, int[] indicesX,
+                 int[] indicesY, int from, int to, boolean splitByXCoordinate,
+                 int[] scratch) {
+        if (from == to) {
+            return null;
+        } else if (to - from == 1) {
+            return new KDNode(points[indicesX[from]]);
+        }
+        int medianX = batch.median(indicesX, from, to, /*forXCoordinate=*/true);
+        int medianY = batch.median(indicesY, from, to, /*forXCoordinate=*/false);
+        KDNode node = new KDNode(new Point(medianX, medianY));
+        int i;
+        if (splitByXCoordinate) {
+            i = batch.partition(indicesY, from, to, /*byXCoordinate=*/true,
+                    medianX, scratch);
+        } else {
+            i = batch.partition(indicesX, from, to, /*byXCoordinate=*/false,
+                    medianY, scratch);
+        }
+        node.left = build(batch, points, indicesX, indicesY, from, i,
+                !splitByXCoordinate, scratch);
+        node.right = build(batch, points, indicesX, indicesY, i, to,
+                !splitByXCoordinate, scratch);
+        node.size = size(node.left) + size(node.right);
+        setScanColumns(node);
+        return node;
+    }
+
+    // Build the KD tree from a columnar batch of unsorted points, without
+    // sorting them. Every node selects the median of its slice of a single
+    // permutation of the batch indices in place, so the build allocates
+    // only the permutation, the points and the nodes.
+    // The left subtree gets the first half of the points by the splitting
+    // coordinate, with the extra point for odd sizes, as in the list build.
+    // Time Complexity = O(nlogn)
+    KDNode build(PointBatch batch, int[] indices, int from, int to,
+                 boolean splitByXCoordinate, Point[] points) {
+        if (from == to) {
+            return null;
+        } else if (to - from == 1) {
+            return new KDNode(points[indices[from]]);
+        }
+        int mid = from + (to - from + 1) / 2;
+        batch.select(indices, from, to, mid - 1, splitByXCoordinate);
+        KDNode node = new KDNode(batch.getPoint(indices[mid - 1]));
+        node.left = build(batch, indices, from, mid, !splitByXCoordinate,
+                points);
+        node.right = build(batch, indices, mid, to, !splitByXCoordinate,
+                points);
+        node.size = to - from;
+        setScanColumns(node);
         return node;
     }
 
+    // Builds a subtree of the in place build in the fork/join pool. The
+    // median is selected as in the sequential build, then the left half is
+    // forked while the right half is built by the current task.
+    // Subtrees below the threshold fall back to the sequential build.
+    @SuppressWarnings("serial")
+    class BuildTask extends RecursiveTask<KDNode> {
+        PointBatch batch;
+        int[] indices;
+        int from;
+        int to;
+        boolean splitByXCoordinate;
+        Point[] points;
+        BuildTask(PointBatch batch, int[] indices, int from, int to,
+                  boolean splitByXCoordinate, Point[] points) {
+            this.batch = batch;
+            this.indices = indices;
+            this.from = from;
+            this.to = to;
+            this.splitByXCoordinate = splitByXCoordinate;
+            this.points = points;
+        }
+
+        @Override
+        protected KDNode compute() {
+            if (to - from < PARALLEL_BUILD_THRESHOLD) {
+                return build(batch, indices, from, to, splitByXCoordinate,
+                        points);
+            }
+            int mid = from + (to - from + 1) / 2;
+            batch.select(indices, from, to, mid - 1, splitByXCoordinate);
+            KDNode node = new KDNode(batch.getPoint(indices[mid - 1]));
+            BuildTask leftTask = new BuildTask(batch, indices, from, mid,
+                    !splitByXCoordinate, points);
+            leftTask.fork();
+            node.right = new BuildTask(batch, indices, mid, to,
+                    !splitByXCoordinate, points).compute();
+            node.left = leftTask.join();
+            node.size = to - from;
+            setScanColumns(node);
+            return node;
+        }
+    }
+
+    // Build the KD tree from a columnar batch of unsorted points on a
+    // fork/join pool with the given parallelism. The tree is identical to the
+    // one returned by the sequential in place build.
+    KDNode build(PointBatch batch, boolean splitByXCoordinate,
+                 int parallelism) {
+        int[] indices = new int[batch.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            return forkJoinPool.invoke(new BuildTask(batch, indices, 0,
+                    indices.length, splitByXCoordinate, batch.toPoints()));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
     public static void main(String[] args) {
         TwoDimensionalKDTree twoDimensionalKDTree =
                 new TwoDimensionalKDTree();
@@ -178,6 +848,82 @@ public class TwoDimensionalKDTree {
                         pointSetY.getLast().getY()),
                 /*checkXCoordinate=*/true);
         Utils.print(pointsReturned);
+
+        // The same tree built from a columnar batch of the points.
+        TwoDimensionalKDTree.KDNode batchRoot = twoDimensionalKDTree.build(
+                PointBatch.of(pointsX), /*splitByXCoordinate*/true);
+        System.out.println("Points returned from batch build");
+        List<Point> batchPointsReturned = new ArrayList<>();
+        twoDimensionalKDTree.findSubtreePointsWithinWindow(batchRoot, window,
+                batchPointsReturned,
+                new Window(pointSetX.getFirst().getX(),
+                        pointSetY.getFirst().getY(),
+                        pointSetX.getLast().getX(),
+                        pointSetY.getLast().getY()),
+                /*checkXCoordinate=*/true);
+        Utils.print(batchPointsReturned);
+
+        // The same query on the fork/join pool, concatenated in order.
+        System.out.println("Points returned from parallel query");
+        Utils.print(ParallelQueryTask.concatenate(
+                twoDimensionalKDTree.findSubtreePointsWithinWindow(root,
+                        window, new Window(pointSetX.getFirst().getX(),
+                                pointSetY.getFirst().getY(),
+                                pointSetX.getLast().getX(),
+                                pointSetY.getLast().getY()),
+                        /*checkXCoordinate=*/true, ForkJoinPool.commonPool())));
+
+        // The tree built in place from the unsorted points.
+        List<Point> unsortedPoints = new ArrayList<>(pointsX);
+        Collections.shuffle(unsortedPoints);
+        TwoDimensionalKDTree.KDNode inPlaceRoot = twoDimensionalKDTree.build(
+                PointBatch.of(unsortedPoints), /*splitByXCoordinate*/true,
+                /*parallelism=*/2);
+        System.out.println("Points returned from in place build");
+        List<Point> inPlacePointsReturned = new ArrayList<>();
+        twoDimensionalKDTree.findSubtreePointsWithinWindow(inPlaceRoot, window,
+                inPlacePointsReturned,
+                new Window(pointSetX.getFirst().getX(),
+                        pointSetY.getFirst().getY(),
+                        pointSetX.getLast().getX(),
+                        pointSetY.getLast().getY()),
+                /*checkXCoordinate=*/true);
+        Utils.print(inPlacePointsReturned);
+
+        // Build a tree by inserting the points one by one, and then delete
+        // the points returned for the window.
+        TwoDimensionalKDTree.KDNode dynamicRoot = null;
+        for (Point point: pointsX) {
+            dynamicRoot = twoDimensionalKDTree.insert(dynamicRoot, point,
+                    /*splitByXCoordinate*/true);
+        }
+        Window region = new Window(pointSetX.getFirst().getX(),
+                pointSetY.getFirst().getY(), pointSetX.getLast().getX(),
+                pointSetY.getLast().getY());
+        System.out.println("Points returned from inserted points");
+        List<Point> insertedPointsReturned = new ArrayList<>();
+        twoDimensionalKDTree.findSubtreePointsWithinWindow(dynamicRoot, window,
+                insertedPointsReturned, region, /*checkXCoordinate=*/true);
+        Utils.print(insertedPointsReturned);
+        for (Point point: insertedPointsReturned) {
+            dynamicRoot = twoDimensionalKDTree.delete(dynamicRoot, point,
+                    /*splitByXCoordinate*/true);
+        }
+        System.out.println("Points returned after delete");
+        List<Point> deletedPointsReturned = new ArrayList<>();
+        twoDimensionalKDTree.findSubtreePointsWithinWindow(dynamicRoot, window,
+                deletedPointsReturned, region, /*checkXCoordinate=*/true);
+        Utils.print(deletedPointsReturned);
+
+        Point query = new Point(20, 20);
+        System.out.println("Points within distance 10 of " + query);
+        List<Point> radiusPointsReturned = new ArrayList<>();
+        twoDimensionalKDTree.findSubtreePointsWithinRadius(root, query, 10,
+                radiusPointsReturned, region, /*checkXCoordinate=*/true);
+        Utils.print(radiusPointsReturned);
+        System.out.println("Nearest 3 points to " + query);
+        Utils.print(twoDimensionalKDTree.nearest(root, query, 3,
+                /*checkXCoordinate=*/true));
     }
 }
 
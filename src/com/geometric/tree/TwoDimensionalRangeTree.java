@@ -1,27 +1,46 @@
 package com.geometric.tree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.TreeSet;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import com.geometric.util.Geometric.*;
+import com.geometric.util.PointBatch;
 import com.geometric.util.Utils;
 
 public class TwoDimensionalRangeTree {
     // The two-dimensional range tree is built as follows.
     // a. The Range tree is built using the X coordinates of the points.
     // b. The canonical set corresponding to the points in the subtree under the
-    // range node is a single dimensional range tree on the y coordinate.
+    // range node is a flat single dimensional range tree on the y coordinate,
+    // so a canonical set query is two binary searches and a slice.
     // Since range trees build faster if the points are pre-sorted, the points
     // are provided sorted by X and Y coordinates.
+    //
+    // The highest nodes with at most scanThreshold points also keep their
+    // points sorted by Y as x and y columns, sharing the points and the y
+    // column with the canonical set. A query reaching such a node
+    // scans the slice of the columns within the window's Y range with the
+    // WindowScan instead of walking down the tree.
 
-    // We use a singleton of the class for invocation of the relevant methods.
-    static SingleDimensionalRangeTree singleDimensionalRangeTree =
-            new SingleDimensionalRangeTree();
+    // Subtrees with fewer points than this are built sequentially by the
+    // parallel build, as forking them costs more than it saves.
+    static final int PARALLEL_BUILD_THRESHOLD = 1 << 13;
+    static final int DEFAULT_SCAN_THRESHOLD = 256;
+    int scanThreshold = DEFAULT_SCAN_THRESHOLD;
     static class RangeNode {
         Point point;
-        SingleDimensionalRangeTree.RangeNode canonicalSet;
+        FlatSingleDimensionalRangeTree canonicalSet;
+        // The subtree points sorted by the Y coordinate, and their
+        // coordinates, or null if the node does not keep scan columns.
+        Point[] pointsByY;
+        int[] xs;
+        int[] ys;
         RangeNode left;
         RangeNode right;
         RangeNode(Point point) {
@@ -29,8 +48,8 @@ public class TwoDimensionalRangeTree {
         }
 
         void buildCanonicalSet(List<Point> points) {
-            canonicalSet = singleDimensionalRangeTree.build(points, /*orderByX
-                    =*/false);
+            canonicalSet = new FlatSingleDimensionalRangeTree(points,
+                    /*orderByX=*/false);
         }
 
         boolean isLeaf() {
@@ -38,6 +57,65 @@ public class TwoDimensionalRangeTree {
         }
     }
 
+    // Keep the subtree points sorted by Y as the scan columns of the node.
+    // The points and the y column are the ones of the canonical set.
+    void buildScanColumns(RangeNode node) {
+        node.pointsByY = node.canonicalSet.points;
+        node.ys = node.canonicalSet.coordinates;
+        node.xs = new int[node.pointsByY.length];
+        for (int i = 0; i < node.pointsByY.length; i++) {
+            node.xs[i] = node.pointsByY[i].getX();
+        }
+    }
+
+    // Index of the first entry in the scan columns whose Y coordinate is
+    // greater than or equal to the given value.
+    int lowerBound(int[] ys, long value) {
+        int low = 0;
+        int high = ys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ys[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Scan the slice of the node's scan columns within the window's Y range
+    // for the points within the window.
+    // Returns false if the sink stopped the traversal.
+    boolean scanPoints(RangeNode node, Window window, PointSink sink) {
+        int index = lowerBound(node.ys, window.getStartY());
+        int end = lowerBound(node.ys, (long) window.getEndY() + 1);
+        if (index >= end) {
+            return true;
+        }
+        int[] matches = new int[end - index];
+        int count = WindowScan.getInstance().scan(node.xs, node.ys, index, end,
+                window, matches);
+        for (int i = 0; i < count; i++) {
+            if (!sink.accept(node.pointsByY[matches[i]])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Add the points of the subtree in the order of their X coordinates.
+    void addLeafsInorder(RangeNode node, PointSink sink) {
+        if (node == null) {
+            return;
+        } else if (node.isLeaf()) {
+            sink.accept(node.point);
+            return;
+        }
+        addLeafsInorder(node.left, sink);
+        addLeafsInorder(node.right, sink);
+    }
+
     // Find the split node for the given range, i.e. the node where left subtree
     // has a key with a value less than the maxima of the range, and the right
     // subtree has a key with value greater than the minima of the range.
@@ -55,61 +133,260 @@ public class TwoDimensionalRangeTree {
 
     // Accumulate the subtree points within the Window as we traverse through
     // the range tree.
+    // Returns false if the sink stopped the traversal.
     // Time complexity = On
-    void findSubtreePointsInWindow(RangeNode node, Window window,
-                                   List<Point> points, boolean isLeftSubtree) {
+    boolean findSubtreePointsInWindow(RangeNode node, Window window,
+                                      PointSink sink, boolean isLeftSubtree) {
+        return findSubtreePointsInWindow(node, window, sink, isLeftSubtree,
+                FlatSingleDimensionalRangeTree::findPoints);
+    }
+
+    // Queries a canonical set hanging off the search path for the points
+    // within the window. The sequential query reports its slice to the sink,
+    // while the parallel query forks the large ones.
+    interface CanonicalSetVisitor {
+        boolean visit(FlatSingleDimensionalRangeTree canonicalSet,
+                      Window window, PointSink sink);
+    }
+
+    // The subtree query handing the canonical sets to the visitor.
+    boolean findSubtreePointsInWindow(RangeNode node, Window window,
+                                      PointSink sink, boolean isLeftSubtree,
+                                      CanonicalSetVisitor visitor) {
         if (node == null) {
-            return;
+            return true;
         } else if (node.isLeaf()) {
             if (window.isPointInWindow(node.point)) {
-                points.add(node.point);
+                return sink.accept(node.point);
             }
-            return;
+            return true;
+        } else if (node.pointsByY != null) {
+            return scanPoints(node, window, sink);
         }
         if (isLeftSubtree) {
             if (node.point.getX() >= window.getStartX()) {
-                findSubtreePointsInWindow(node.left, window, points,
-                        isLeftSubtree);
                 // Filter points that are within the Y coordinates for the window
-                singleDimensionalRangeTree.findPoints(node.right.canonicalSet,
-                        window, points, /*orderByX=*/false);
+                return findSubtreePointsInWindow(node.left, window, sink,
+                        isLeftSubtree, visitor) &&
+                        visitor.visit(node.right.canonicalSet, window, sink);
             } else {
-                findSubtreePointsInWindow(node.right, window, points,
-                        isLeftSubtree);
+                return findSubtreePointsInWindow(node.right, window, sink,
+                        isLeftSubtree, visitor);
             }
         } else {
             if (node.point.getX() <= window.getEndX()) {
                 // Filter points that are within the Y coordinates for the window.
-                singleDimensionalRangeTree.findPoints(node.left.canonicalSet,
-                        window, points, /*orderByX=*/false);
-                findSubtreePointsInWindow(node.right, window, points,
+                return visitor.visit(node.left.canonicalSet, window, sink) &&
+                        findSubtreePointsInWindow(node.right, window, sink,
+                                isLeftSubtree, visitor);
+            } else {
+                return findSubtreePointsInWindow(node.left, window, sink,
+                        isLeftSubtree, visitor);
+            }
+        }
+    }
+
+    // Count the subtree points within the Window as we traverse through the
+    // range tree. The canonical sets of the subtrees hanging off the search
+    // path are counted instead of reported.
+    // Time complexity = O(log^2n)
+    int countSubtreePointsInWindow(RangeNode node, Window window,
+                                   boolean isLeftSubtree) {
+        if (node == null) {
+            return 0;
+        } else if (node.isLeaf()) {
+            return window.isPointInWindow(node.point) ? 1 : 0;
+        }
+        if (isLeftSubtree) {
+            if (node.point.getX() >= window.getStartX()) {
+                return countSubtreePointsInWindow(node.left, window,
+                        isLeftSubtree) +
+                        node.right.canonicalSet.count(window);
+            } else {
+                return countSubtreePointsInWindow(node.right, window,
                         isLeftSubtree);
+            }
+        } else {
+            if (node.point.getX() <= window.getEndX()) {
+                return node.left.canonicalSet.count(window) +
+                        countSubtreePointsInWindow(node.right, window,
+                                isLeftSubtree);
             } else {
-                findSubtreePointsInWindow(node.left, window, points,
+                return countSubtreePointsInWindow(node.left, window,
                         isLeftSubtree);
             }
         }
     }
 
+    // Count the points in the given window without reporting them.
+    int count(RangeNode node, Window window) {
+        RangeNode splitNode = findSplitNode(node, window);
+        if (splitNode == null) {
+            return 0;
+        } else if (splitNode.isLeaf()) {
+            return window.isPointInWindow(splitNode.point) ? 1 : 0;
+        }
+        return countSubtreePointsInWindow(splitNode.left, window,
+                /*isLeftSubtree=*/true) +
+                countSubtreePointsInWindow(splitNode.right, window,
+                        /*isLeftSubtree=*/false);
+    }
+
+    // Aggregate the weights of the subtree points within the Window. The
+    // canonical sets of the subtrees hanging off the search path are
+    // aggregated from the aggregates stored in their nodes.
+    void aggregateSubtreePointsInWindow(RangeNode node, Window window,
+                                        boolean isLeftSubtree,
+                                        Aggregate result) {
+        if (node == null) {
+            return;
+        } else if (node.isLeaf()) {
+            if (window.isPointInWindow(node.point)) {
+                node.canonicalSet.aggregate(window, result);
+            }
+            return;
+        }
+        if (isLeftSubtree) {
+            if (node.point.getX() >= window.getStartX()) {
+                aggregateSubtreePointsInWindow(node.left, window,
+                        isLeftSubtree, result);
+                node.right.canonicalSet.aggregate(window, result);
+            } else {
+                aggregateSubtreePointsInWindow(node.right, window,
+                        isLeftSubtree, result);
+            }
+        } else {
+            if (node.point.getX() <= window.getEndX()) {
+                node.left.canonicalSet.aggregate(window, result);
+                aggregateSubtreePointsInWindow(node.right, window,
+                        isLeftSubtree, result);
+            } else {
+                aggregateSubtreePointsInWindow(node.left, window,
+                        isLeftSubtree, result);
+            }
+        }
+    }
+
+    // Aggregate the weights of the weighted points in the given window
+    // without reporting them.
+    // Time complexity = O(log^2n)
+    Aggregate aggregate(RangeNode node, Window window) {
+        Aggregate result = new Aggregate();
+        RangeNode splitNode = findSplitNode(node, window);
+        if (splitNode == null) {
+            return result;
+        } else if (splitNode.isLeaf()) {
+            if (window.isPointInWindow(splitNode.point)) {
+                splitNode.canonicalSet.aggregate(window, result);
+            }
+            return result;
+        }
+        aggregateSubtreePointsInWindow(splitNode.left, window,
+                /*isLeftSubtree=*/true, result);
+        aggregateSubtreePointsInWindow(splitNode.right, window,
+                /*isLeftSubtree=*/false, result);
+        return result;
+    }
+
     // To find points in the given window we do the following.
     // a. Find split node using both the X and Y coordinates of the window.
     // b. Add the node if search ends in a leaf, and it is within the window.
     // c. Accumulate points from the left and right subtrees of the split
     // node that are within the window.
     void findPoints(RangeNode node, Window window, List<Point> points) {
+        findPoints(node, window, points::add);
+    }
+
+    // Stream the points in the given window to the sink.
+    // Returns false if the sink stopped the query.
+    boolean findPoints(RangeNode node, Window window, PointSink sink) {
+        return findPoints(node, window, sink,
+                FlatSingleDimensionalRangeTree::findPoints);
+    }
+
+    // The query handing the canonical sets to the visitor.
+    boolean findPoints(RangeNode node, Window window, PointSink sink,
+                       CanonicalSetVisitor visitor) {
         RangeNode splitNode = findSplitNode(node, window);
         if (splitNode == null) {
-            return;
+            return true;
         } else if (splitNode.isLeaf()) {
             /* Had missed this in the first impl. */
             if (window.isPointInWindow(splitNode.point)) {
-                points.add(splitNode.point);
+                return sink.accept(splitNode.point);
             }
+            return true;
+        } else if (splitNode.pointsByY != null) {
+            return scanPoints(splitNode, window, sink);
         }
-        findSubtreePointsInWindow(splitNode.left, window, points,
-                /*isLeftSubtree=*/true);
-        findSubtreePointsInWindow(splitNode.right, window, points,
-                /*isLeftSubtree=*/false);
+        return findSubtreePointsInWindow(splitNode.left, window, sink,
+                /*isLeftSubtree=*/true, visitor) &&
+                findSubtreePointsInWindow(splitNode.right, window, sink,
+                        /*isLeftSubtree=*/false, visitor);
+    }
+
+    // Walks the window query in the fork/join pool. The search paths from
+    // the split node are short, so they are walked by this task with the
+    // traversal of the sequential query, while the large canonical sets
+    // hanging off them are queried by forked tasks.
+    @SuppressWarnings("serial")
+    class WindowQueryTask extends ParallelQueryTask {
+        RangeNode node;
+        Window window;
+        WindowQueryTask(RangeNode node, Window window) {
+            this.node = node;
+            this.window = window;
+        }
+
+        @Override
+        void query() {
+            findPoints(node, window, point -> buffer().add(point),
+                    this::findCanonicalPoints);
+        }
+
+        // Report the slice of the canonical set within the window, forking
+        // the large slices in chunks of the threshold.
+        boolean findCanonicalPoints(FlatSingleDimensionalRangeTree canonicalSet,
+                                    Window window, PointSink sink) {
+            int from = canonicalSet.from(window);
+            int to = canonicalSet.to(window);
+            if (to - from < PARALLEL_QUERY_THRESHOLD) {
+                return canonicalSet.findPoints(window, sink);
+            }
+            for (int i = from; i < to; i += PARALLEL_QUERY_THRESHOLD) {
+                fork(new CanonicalSetQueryTask(canonicalSet, i,
+                        Math.min(to, i + PARALLEL_QUERY_THRESHOLD)));
+            }
+            return true;
+        }
+    }
+
+    // Copies a slice of a canonical set in the fork/join pool.
+    @SuppressWarnings("serial")
+    class CanonicalSetQueryTask extends ParallelQueryTask {
+        FlatSingleDimensionalRangeTree canonicalSet;
+        int from;
+        int to;
+        CanonicalSetQueryTask(FlatSingleDimensionalRangeTree canonicalSet,
+                              int from, int to) {
+            this.canonicalSet = canonicalSet;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        void query() {
+            buffer().addAll(Arrays.asList(canonicalSet.points).subList(from,
+                    to));
+        }
+    }
+
+    // Find the points in the given window on the fork/join pool. The points
+    // are returned as the buffers of the tasks, in the order of the
+    // sequential query, see ParallelQueryTask.concatenate.
+    List<List<Point>> findPoints(RangeNode node, Window window,
+                                 ForkJoinPool forkJoinPool) {
+        return forkJoinPool.invoke(new WindowQueryTask(node, window));
     }
 
     // Recursively build out the 2D Range Tree.
@@ -119,6 +396,14 @@ public class TwoDimensionalRangeTree {
     // are some workarounds to allow for this which are out of scope for this
     // implementation.
     RangeNode build(List<Point> pointsX, List<Point> pointsY) {
+        return build(pointsX, pointsY, /*isScanCandidate=*/true);
+    }
+
+    // Build the subtree. The node keeps scan columns if it has at most
+    // scanThreshold points and is a scan candidate, i.e. none of its
+    // ancestors keep them.
+    RangeNode build(List<Point> pointsX, List<Point> pointsY,
+                    boolean isScanCandidate) {
         if (pointsX.isEmpty()) {
             return null;
         } else if (pointsX.size() == 1) {
@@ -138,6 +423,11 @@ public class TwoDimensionalRangeTree {
         }
 
         node.buildCanonicalSet(pointsY);
+        boolean hasScanColumns = isScanCandidate &&
+                pointsX.size() <= scanThreshold;
+        if (hasScanColumns) {
+            buildScanColumns(node);
+        }
         List<Point> leftSubtreePointsSortedByX = pointsX.subList(0, i);
         List<Point> rightSubtreePointsSortedByX = pointsX.subList(i,
                 pointsX.size());
@@ -149,12 +439,128 @@ public class TwoDimensionalRangeTree {
                         rightSubtreePointsSortedByX);
 
         node.left = build(leftSubtreePointsSortedByX,
-                leftSubtreePointsSortedByY);
+                leftSubtreePointsSortedByY, isScanCandidate && !hasScanColumns);
         node.right = build(rightSubtreePointsSortedByX,
-                rightSubtreePointsSortedByY);
+                rightSubtreePointsSortedByY,
+                isScanCandidate && !hasScanColumns);
         return node;
     }
 
+    // Build the 2D Range Tree from a columnar batch of points.
+    // The batch indices are sorted by X and Y once, and every node then works
+    // on the same slice of both permutations.
+    RangeNode build(PointBatch batch) {
+        return build(batch, batch.toPoints(), batch.sortedIndices(true),
+                batch.sortedIndices(false), 0, batch.size(),
+                new int[batch.size()], /*isScanCandidate=*/true);
+    }
+
+    // Build the subtree for a slice of the permutations. The points in the
+    // left subtree are the ones with an X coordinate up to the median, so a
+    // stable partition of the Y permutation by X replaces the list
+    // intersection, and keeps both halves sorted by Y.
+    RangeNode build(PointBatch batch, Point[] points, int[] indicesX,
+                    int[] indicesY, int from, int to, int[] scratch,
+                    boolean isScanCandidate) {
+        if (from == to) {
+            return null;
+        }
+        RangeNode node;
+        if (to - from == 1) {
+            node = new RangeNode(points[indicesX[from]]);
+        } else {
+            int medianX = batch.median(indicesX, from, to, true);
+            int medianY = batch.median(indicesY, from, to, false);
+            node = new RangeNode(new Point(medianX, medianY));
+        }
+        Point[] pointsByY = new Point[to - from];
+        for (int j = from; j < to; j++) {
+            pointsByY[j - from] = points[indicesY[j]];
+        }
+        node.canonicalSet = new FlatSingleDimensionalRangeTree(pointsByY,
+                /*orderByX=*/false);
+        if (to - from == 1) {
+            return node;
+        }
+        boolean hasScanColumns = isScanCandidate && to - from <= scanThreshold;
+        if (hasScanColumns) {
+            buildScanColumns(node);
+        }
+        int i = batch.partition(indicesY, from, to, /*byXCoordinate=*/true,
+                node.point.getX(), scratch);
+        node.left = build(batch, points, indicesX, indicesY, from, i, scratch,
+                isScanCandidate && !hasScanColumns);
+        node.right = build(batch, points, indicesX, indicesY, i, to, scratch,
+                isScanCandidate && !hasScanColumns);
+        return node;
+    }
+
+    // Builds a subtree in the fork/join pool. The node is split exactly as in
+    // the sequential build, then the canonical set and the left subtree are
+    // forked while the right subtree is built by the current task.
+    // Subtrees below the threshold fall back to the sequential build, and so
+    // do the ones small enough to keep scan columns. The nodes built by the
+    // tasks therefore never keep them, and the subtrees they hand to the
+    // sequential build are all scan candidates.
+    @SuppressWarnings("serial")
+    class BuildTask extends RecursiveTask<RangeNode> {
+        List<Point> pointsX;
+        List<Point> pointsY;
+        BuildTask(List<Point> pointsX, List<Point> pointsY) {
+            this.pointsX = pointsX;
+            this.pointsY = pointsY;
+        }
+
+        @Override
+        protected RangeNode compute() {
+            if (pointsX.size() < PARALLEL_BUILD_THRESHOLD ||
+                    pointsX.size() <= scanThreshold) {
+                return build(pointsX, pointsY, /*isScanCandidate=*/true);
+            }
+
+            int medianX = Utils.median(pointsX, true);
+            int medianY = Utils.median(pointsY, false);
+            RangeNode node = new RangeNode(new Point(medianX, medianY));
+            int i;
+            for (i = 0; i < pointsX.size(); i++) {
+                if (pointsX.get(i).getX() > medianX) {
+                    break;
+                }
+            }
+
+            ForkJoinTask<FlatSingleDimensionalRangeTree> canonicalSetTask =
+                    ForkJoinTask.adapt(() -> new FlatSingleDimensionalRangeTree(
+                            pointsY, /*orderByX=*/false)).fork();
+            List<Point> leftSubtreePointsSortedByX = pointsX.subList(0, i);
+            List<Point> rightSubtreePointsSortedByX = pointsX.subList(i,
+                    pointsX.size());
+            BuildTask leftTask = new BuildTask(leftSubtreePointsSortedByX,
+                    Utils.getIntersectingPoints(pointsY,
+                            leftSubtreePointsSortedByX));
+            leftTask.fork();
+            BuildTask rightTask = new BuildTask(rightSubtreePointsSortedByX,
+                    Utils.getIntersectingPoints(pointsY,
+                            rightSubtreePointsSortedByX));
+
+            node.right = rightTask.compute();
+            node.left = leftTask.join();
+            node.canonicalSet = canonicalSetTask.join();
+            return node;
+        }
+    }
+
+    // Build the 2D Range Tree on a fork/join pool with the given parallelism.
+    // The tree is identical to the one returned by the sequential build.
+    RangeNode build(List<Point> pointsX, List<Point> pointsY,
+                    int parallelism) {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            return forkJoinPool.invoke(new BuildTask(pointsX, pointsY));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
     public static void main(String[] args) {
         TwoDimensionalRangeTree twoDimensionalRangeTree =
                 new TwoDimensionalRangeTree();
@@ -189,5 +595,59 @@ public class TwoDimensionalRangeTree {
         twoDimensionalRangeTree.findPoints(root, window, pointsReturned);
         System.out.println("Points returned");
         Utils.print(pointsReturned);
+        System.out.println("Points counted");
+        System.out.println(twoDimensionalRangeTree.count(root, window));
+        // Stream the points and stop after the first two.
+        System.out.println("First two points");
+        int[] limit = {2};
+        twoDimensionalRangeTree.findPoints(root, window, point -> {
+            System.out.println(point);
+            return --limit[0] > 0;
+        });
+
+        // The same query on the fork/join pool, concatenated in order.
+        System.out.println("Points returned from parallel query");
+        Utils.print(ParallelQueryTask.concatenate(twoDimensionalRangeTree
+                .findPoints(root, window, ForkJoinPool.commonPool())));
+
+        // The parallel build returns the same tree.
+        RangeNode parallelRoot = twoDimensionalRangeTree.build(pointsX,
+                pointsY, /*parallelism=*/2);
+        System.out.println("Points counted with parallel build");
+        System.out.println(twoDimensionalRangeTree.count(parallelRoot, window));
+
+        // Build from a columnar batch with ids, and report the ids carried by
+        // the points found.
+        int[] xs = new int[pointsX.size()];
+        int[] ys = new int[pointsX.size()];
+        int[] ids = new int[pointsX.size()];
+        for (int i = 0; i < pointsX.size(); i++) {
+            xs[i] = pointsX.get(i).getX();
+            ys[i] = pointsX.get(i).getY();
+            ids[i] = 100 + i;
+        }
+        RangeNode batchRoot = twoDimensionalRangeTree.build(
+                new PointBatch(xs, ys, ids));
+        System.out.println("Ids of the points returned from batch build");
+        twoDimensionalRangeTree.findPoints(batchRoot, window, point -> {
+            System.out.println(point + " id " +
+                    ((IndexedPoint) point).getIndex());
+            return true;
+        });
+
+        // Weight the points by their x coordinate and aggregate the weights.
+        List<Point> weightedPointsX = new ArrayList<>();
+        List<Point> weightedPointsY = new ArrayList<>();
+        for (Point point: pointsX) {
+            weightedPointsX.add(new WeightedPoint(point.getX(), point.getY(),
+                    point.getX()));
+        }
+        weightedPointsY.addAll(weightedPointsX);
+        weightedPointsY.sort(Utils.getPointYComparator());
+        RangeNode weightedRoot = twoDimensionalRangeTree.build(weightedPointsX,
+                weightedPointsY);
+        System.out.println("Weights aggregated");
+        System.out.println(twoDimensionalRangeTree.aggregate(weightedRoot,
+                window));
     }
 }
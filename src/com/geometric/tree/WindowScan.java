@@ -0,0 +1,56 @@
+package com.geometric.tree;
+
+import com.geometric.util.Geometric.*;
+
+// A brute force scan of columnar x and y coordinates against a window.
+// For small subtrees a linear scan is cheaper than the tree traversal, so the
+// columnar trees switch to it below a subtree size threshold.
+//
+// The scan is vectorized with the Vector API when VectorWindowScan from the
+// src-vector source root is on the class path and the jdk.incubator.vector
+// module is present, i.e. the JVM runs with
+// --add-modules jdk.incubator.vector, and is scalar otherwise.
+public class WindowScan {
+    static final WindowScan INSTANCE = create();
+
+    static WindowScan create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (WindowScan) Class.forName(
+                                "com.geometric.tree.VectorWindowScan")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to the scalar scan.
+            }
+        }
+        return new WindowScan();
+    }
+
+    static WindowScan getInstance() {
+        return INSTANCE;
+    }
+
+    // Write the indices of the points in the slice of the columns that lie
+    // within the window to matches, which must have room for the whole slice.
+    // Returns the number of indices written.
+    int scan(int[] xs, int[] ys, int from, int to, Window window,
+             int[] matches) {
+        return scanScalar(xs, ys, from, to, window, matches, 0);
+    }
+
+    // The scalar scan, which appends to matches after count.
+    static int scanScalar(int[] xs, int[] ys, int from, int to, Window window,
+                          int[] matches, int count) {
+        int startX = window.getStartX();
+        int startY = window.getStartY();
+        int endX = window.getEndX();
+        int endY = window.getEndY();
+        for (int i = from; i < to; i++) {
+            if (xs[i] >= startX && xs[i] <= endX &&
+                    ys[i] >= startY && ys[i] <= endY) {
+                matches[count++] = i;
+            }
+        }
+        return count;
+    }
+}
@@ -1,5 +1,7 @@
 package com.geometric.util;
 
+import java.util.Arrays;
+
 public class Geometric {
     public static class Point {
         int x;
@@ -22,6 +24,86 @@ public class Geometric {
         }
     }
 
+    // A point with a numeric weight, which the range trees aggregate.
+    public static class WeightedPoint extends Point {
+        long weight;
+        public String toString() {
+            return super.toString() + ", weight:" + weight;
+        }
+        public WeightedPoint(int x, int y, long weight) {
+            super(x, y);
+            this.weight = weight;
+        }
+        public long getWeight() {
+            return weight;
+        }
+    }
+
+    // A point carrying an index into an array held by the structure that
+    // stores it, e.g. the segment of a segment endpoint.
+    public static class IndexedPoint extends Point {
+        int index;
+        public IndexedPoint(int x, int y, int index) {
+            super(x, y);
+            this.index = index;
+        }
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    // A point with any number of coordinates. Its first two coordinates are
+    // its x and y coordinates.
+    public static class MultiDimensionalPoint extends Point {
+        int[] coordinates;
+        public String toString() {
+            return "coordinates:" + Arrays.toString(coordinates);
+        }
+        public MultiDimensionalPoint(int... coordinates) {
+            super(coordinates[0], coordinates.length > 1 ? coordinates[1] : 0);
+            this.coordinates = coordinates.clone();
+        }
+        public int getDimensions() {
+            return coordinates.length;
+        }
+        public int getCoordinate(int dimension) {
+            return coordinates[dimension];
+        }
+    }
+
+    // A window with a closed range of coordinates for every dimension.
+    public static class MultiDimensionalWindow {
+        int[] starts;
+        int[] ends;
+        public MultiDimensionalWindow(int[] starts, int[] ends) {
+            this.starts = starts.clone();
+            this.ends = ends.clone();
+        }
+        public int getDimensions() {
+            return starts.length;
+        }
+        public int getStart(int dimension) {
+            return starts[dimension];
+        }
+        public int getEnd(int dimension) {
+            return ends[dimension];
+        }
+        public boolean isPointInWindow(MultiDimensionalPoint point) {
+            for (int i = 0; i < starts.length; i++) {
+                if (point.coordinates[i] < starts[i] ||
+                        point.coordinates[i] > ends[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String toString() {
+            return "[ " + Arrays.toString(starts) + " -- " +
+                    Arrays.toString(ends) + " ]";
+        }
+    }
+
     public static class Window {
         int startX;
         int startY;
@@ -0,0 +1,230 @@
+package com.geometric.util;
+
+import java.util.List;
+
+// A columnar batch of points, stored as parallel arrays of primitive
+// coordinates with optional ids.
+// The trees build from a batch by sorting and partitioning permutations of
+// the batch indices, instead of sorted lists of point objects.
+public class PointBatch {
+    int[] xs;
+    int[] ys;
+    int[] ids;
+
+    public PointBatch(int[] xs, int[] ys) {
+        this(xs, ys, null);
+    }
+
+    public PointBatch(int[] xs, int[] ys, int[] ids) {
+        if (xs.length != ys.length || (ids != null && ids.length != xs.length)) {
+            throw new IllegalArgumentException("Columns differ in length");
+        }
+        this.xs = xs;
+        this.ys = ys;
+        this.ids = ids;
+    }
+
+    public static PointBatch of(List<Geometric.Point> points) {
+        int[] xs = new int[points.size()];
+        int[] ys = new int[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            xs[i] = points.get(i).x;
+            ys[i] = points.get(i).y;
+        }
+        return new PointBatch(xs, ys);
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    public int getCoordinate(int index, boolean forXCoordinate) {
+        return forXCoordinate ? xs[index] : ys[index];
+    }
+
+    // The id of the point, which is its index when the batch has no ids.
+    public int getId(int index) {
+        return ids == null ? index : ids[index];
+    }
+
+    public Geometric.Point getPoint(int index) {
+        return new Geometric.Point(xs[index], ys[index]);
+    }
+
+    // Materialize the points of the batch, one object per point.
+    // The trees report points, so they share these objects between the
+    // structures built for the batch. When the batch has ids, the points are
+    // indexed points carrying them, so the reported points can be mapped back
+    // to the caller's records.
+    public Geometric.Point[] toPoints() {
+        Geometric.Point[] points = new Geometric.Point[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            points[i] = ids == null ? getPoint(i) :
+                    new Geometric.IndexedPoint(xs[i], ys[i], ids[i]);
+        }
+        return points;
+    }
+
+    // Compares points by one coordinate and then by the other one, the same
+    // order as the point comparators in Utils.
+    int compare(int index1, int index2, boolean byX) {
+        int[] first = byX ? xs : ys;
+        int[] second = byX ? ys : xs;
+        if (first[index1] != first[index2]) {
+            return Integer.compare(first[index1], first[index2]);
+        }
+        return Integer.compare(second[index1], second[index2]);
+    }
+
+    // Compares the point to a point with the given coordinates, in the same
+    // order as compare.
+    int compare(int index, int first, int second, boolean byX) {
+        int[] firstCoordinates = byX ? xs : ys;
+        int[] secondCoordinates = byX ? ys : xs;
+        if (firstCoordinates[index] != first) {
+            return Integer.compare(firstCoordinates[index], first);
+        }
+        return Integer.compare(secondCoordinates[index], second);
+    }
+
+    // Reorder the slice of indices so the point at index k is the one that
+    // would be there if the slice was sorted by X or Y, with the points
+    // before it not greater and the points after it not less.
+    // This is a quickselect with a median of three pivot. As in an introsort,
+    // the partitioning is limited to 2log(n) rounds, and if the slice around
+    // k is still unresolved after them it is merge sorted, bounding the time
+    // to O(nlogn).
+    // Time Complexity = O(n) expected
+    public void select(int[] indices, int from, int to, int k, boolean byX) {
+        int low = from;
+        int high = to - 1;
+        int rounds = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+        while (low < high) {
+            if (rounds-- == 0) {
+                mergeSort(indices, new int[high - low + 1], low, low,
+                        high + 1, byX);
+                return;
+            }
+            int mid = (low + high) >>> 1;
+            int pivot = medianOfThree(indices[low], indices[mid],
+                    indices[high], byX);
+            int pivotFirst = getCoordinate(pivot, byX);
+            int pivotSecond = getCoordinate(pivot, !byX);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(indices[i], pivotFirst, pivotSecond, byX) < 0) {
+                    i++;
+                }
+                while (compare(indices[j], pivotFirst, pivotSecond, byX) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = indices[i];
+                    indices[i] = indices[j];
+                    indices[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int medianOfThree(int index1, int index2, int index3,
+                              boolean byX) {
+        if (compare(index1, index2, byX) > 0) {
+            int swap = index1;
+            index1 = index2;
+            index2 = swap;
+        }
+        if (compare(index2, index3, byX) <= 0) {
+            return index2;
+        }
+        return compare(index1, index3, byX) > 0 ? index1 : index3;
+    }
+
+    // The permutation of the batch indices that sorts the points by X or Y.
+    // A merge sort is used so that no index needs to be boxed.
+    // Time Complexity = O(nlogn)
+    public int[] sortedIndices(boolean byX) {
+        int[] indices = new int[xs.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        mergeSort(indices, new int[indices.length], 0, 0, indices.length, byX);
+        return indices;
+    }
+
+    // Merge sort the slice of indices. The scratch holds the indices from
+    // the given offset on, so it only needs to be as long as the sorted
+    // range.
+    private void mergeSort(int[] indices, int[] scratch, int offset, int from,
+                           int to, boolean byX) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(indices, scratch, offset, from, mid, byX);
+        mergeSort(indices, scratch, offset, mid, to, byX);
+        if (compare(indices[mid - 1], indices[mid], byX) <= 0) {
+            return;
+        }
+        System.arraycopy(indices, from, scratch, from - offset, to - from);
+        int i = from - offset;
+        int j = mid - offset;
+        for (int k = from; k < to; k++) {
+            if (j >= to - offset || (i < mid - offset &&
+                    compare(scratch[i], scratch[j], byX) <= 0)) {
+                indices[k] = scratch[i++];
+            } else {
+                indices[k] = scratch[j++];
+            }
+        }
+    }
+
+    // Same as Utils.median for the points at the given slice of indices.
+    public int median(int[] indices, int from, int to,
+                      boolean forXCoordinate) {
+        int size = to - from;
+        if (size % 2 == 0) {
+            return getCoordinate(indices[from + size/2 - 1], forXCoordinate)/2 +
+                    getCoordinate(indices[from + size/2], forXCoordinate)/2;
+        } else {
+            return getCoordinate(indices[from + size/2], forXCoordinate);
+        }
+    }
+
+    // Stably partition the slice of indices so the points with a coordinate
+    // less than or equal to the median come first. This keeps both halves in
+    // the order they were sorted by.
+    // Returns the start of the second half.
+    public int partition(int[] indices, int from, int to,
+                         boolean byXCoordinate, int median, int[] scratch) {
+        int left = from;
+        int right = 0;
+        for (int i = from; i < to; i++) {
+            if (getCoordinate(indices[i], byXCoordinate) <= median) {
+                indices[left++] = indices[i];
+            } else {
+                scratch[right++] = indices[i];
+            }
+        }
+        System.arraycopy(scratch, 0, indices, left, right);
+        return left;
+    }
+}
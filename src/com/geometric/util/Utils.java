@@ -85,6 +85,21 @@ public class Utils {
         }
     }
 
+    // The sign of a * b + c * d. Both products are computed in 128 bits, so
+    // the sign is exact for factors below 2^62, e.g. the differences of any
+    // two int coordinates, and the sums and differences of those.
+    public static int signOfSum(long a, long b, long c, long d) {
+        long low1 = a * b;
+        long low2 = c * d;
+        long low = low1 + low2;
+        long carry = Long.compareUnsigned(low, low1) < 0 ? 1 : 0;
+        long high = Math.multiplyHigh(a, b) + Math.multiplyHigh(c, d) + carry;
+        if (high != 0) {
+            return high < 0 ? -1 : 1;
+        }
+        return low == 0 ? 0 : 1;
+    }
+
     /* To limit to positive randoms you need to provide a bound.
     // Default Method Definition
     public int nextInt();